@@ -2,6 +2,7 @@ rootProject.name = "sustc"
 
 include(
     "sustc-api",
+    "sustc-reactive",
     "sustc-runner",
 )
 
@@ -12,12 +12,22 @@ plugins {
 
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-jdbc")
+    implementation("org.postgresql:postgresql")
     compileOnly("com.opencsv:opencsv:5.8")
 
+    // the tests run the services against a PostgreSQL container, and are skipped without Docker
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testImplementation("org.testcontainers:junit-jupiter:1.19.3")
+    testImplementation("org.testcontainers:postgresql:1.19.3")
+
     // You may add any utility library you want to use, such as guava.
     // ORM libraries are prohibited in this project.
 }
 
+tasks.withType<Test> {
+    useJUnitPlatform()
+}
+
 tasks.withType<BootRun> {
     enabled = false
 }
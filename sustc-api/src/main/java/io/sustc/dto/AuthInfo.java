@@ -36,6 +36,12 @@ public class AuthInfo implements Serializable {
      */
     private String wechat;
 
+    /**
+     * A session token from {@link io.sustc.service.impl.auth.Authenticator#login(AuthInfo)}, used together with {@code mid}
+     * instead of the password, QQ and WeChat.
+     */
+    private String token;
+
      /**
      * Checks if the authentication information is valid.
      *
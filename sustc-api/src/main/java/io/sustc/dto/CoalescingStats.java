@@ -0,0 +1,40 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * How many calls of one coalesced service method shared the execution of an identical call in flight
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CoalescingStats implements Serializable {
+
+    /**
+     * The service method, as {@code Class.method}.
+     */
+    private String method;
+
+    /**
+     * The number of calls since startup.
+     */
+    private long calls;
+
+    /**
+     * The number of calls that waited for an identical call instead of running themselves.
+     */
+    private long coalesced;
+
+    /**
+     * @return the share of the calls that were coalesced, 0 if there were none
+     */
+    public double getCoalescingRatio() {
+        return calls == 0 ? 0 : (double) coalesced / calls;
+    }
+}
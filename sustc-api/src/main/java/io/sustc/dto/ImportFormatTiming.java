@@ -0,0 +1,42 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The time taken to load a sample of records into one table with one write format
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportFormatTiming implements Serializable {
+
+    /**
+     * The table the sample was loaded into.
+     */
+    private String table;
+
+    /**
+     * The write format, such as {@code PreparedStatement}, {@code COPY text} or {@code COPY binary}.
+     */
+    private String format;
+
+    /**
+     * The number of rows loaded per run.
+     */
+    private long rows;
+
+    /**
+     * The fastest of the measured runs, in nanoseconds.
+     */
+    private long elapsedTime;
+
+    public long getRowsPerSecond() {
+        return rows * 1_000_000_000L / Math.max(1, elapsedTime);
+    }
+}
@@ -0,0 +1,80 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The tuning options used for data import
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportOptions implements Serializable {
+
+    /**
+     * The way records are written to the database.
+     */
+    @Builder.Default
+    private Mode mode = Mode.COPY;
+
+    /**
+     * The number of connections loading chunks or tables at the same time.
+     */
+    @Builder.Default
+    private int parallelism = 4;
+
+    /**
+     * The number of records per chunk in the {@code COPY} modes.
+     */
+    @Builder.Default
+    private int chunkSize = 50_000;
+
+    /**
+     * Whether to drop the indexes and constraints before loading and rebuild them afterwards.
+     */
+    @Builder.Default
+    private boolean deferIndexes = false;
+
+    /**
+     * Whether every committed chunk is recorded in {@code import_checkpoint}, so a failed import can be resumed.
+     * Only supported in the {@code COPY} modes.
+     */
+    @Builder.Default
+    private boolean checkpoint = false;
+
+    /**
+     * Whether to continue from the checkpoints of a previous import instead of starting over.
+     * The records, their order and the chunk size must be the same as in the checkpointed import.
+     */
+    @Builder.Default
+    private boolean resume = false;
+
+    public enum Mode {
+        /**
+         * One {@code INSERT} per record, kept as a fallback.
+         */
+        ROW,
+        /**
+         * Streams the records through {@code COPY ... FROM STDIN} in text format.
+         */
+        COPY,
+        /**
+         * Like {@link #COPY}, but the users, videos and danmus are sent in the binary {@code COPY} format.
+         */
+        BINARY_COPY,
+        /**
+         * Copies the records into {@code UNLOGGED} staging tables first,
+         * then moves them into the live tables with one {@code INSERT ... SELECT} per table.
+         */
+        STAGING,
+    }
+
+    public static ImportOptions defaults() {
+        return ImportOptions.builder().build();
+    }
+}
@@ -0,0 +1,119 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the connection pool and of how the connections have been used since startup
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PoolStats implements Serializable {
+
+    /**
+     * The number of connections in use.
+     */
+    private int activeConnections;
+
+    /**
+     * The number of connections idle in the pool.
+     */
+    private int idleConnections;
+
+    /**
+     * The number of threads waiting for a connection.
+     */
+    private int pendingThreads;
+
+    /**
+     * The maximum size of the pool.
+     */
+    private int maximumPoolSize;
+
+    /**
+     * The number of connections taken from the pool.
+     */
+    private long acquisitions;
+
+    /**
+     * The time spent waiting for connections from the pool, in nanoseconds.
+     */
+    private long acquireTime;
+
+    /**
+     * The number of acquisitions per latency bucket, keyed by the upper bound of the bucket, such as {@code <= 1 ms}.
+     */
+    private Map<String, Long> acquireHistogram;
+
+    /**
+     * How long the longest-held connection in use has been held, in nanoseconds, or 0 if none is in use.
+     */
+    private long longestHeldTime;
+
+    /**
+     * The method holding the longest-held connection in use, or null if none is in use.
+     */
+    private String longestHeldBy;
+
+    /**
+     * How long the connections have been held per method, the longest total first.
+     */
+    private List<HoldTime> holdTimes;
+
+    /**
+     * The connections held longer than the leak threshold, with where they were taken when known.
+     */
+    private List<String> suspectedLeaks;
+
+    /**
+     * The statements and result sets left open, keyed by where they were opened, with how often that happened.
+     * Only filled while leak detection is enabled.
+     */
+    private Map<String, Long> leftOpen;
+
+    public long getMeanAcquireTime() {
+        return acquireTime / Math.max(1, acquisitions);
+    }
+
+    /**
+     * The connections held by one method
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class HoldTime implements Serializable {
+
+        /**
+         * The service method, such as {@code VideoServiceImpl.coinVideo}, or {@code other} outside the services.
+         */
+        private String method;
+
+        /**
+         * The number of connections held and returned.
+         */
+        private long connections;
+
+        /**
+         * The total time the connections were held, in nanoseconds.
+         */
+        private long totalTime;
+
+        /**
+         * The longest time one connection was held, in nanoseconds.
+         */
+        private long maxTime;
+
+        public long getMeanTime() {
+            return totalTime / Math.max(1, connections);
+        }
+    }
+}
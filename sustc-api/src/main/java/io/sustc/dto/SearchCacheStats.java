@@ -0,0 +1,51 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * How the cache of search results has been used since startup
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchCacheStats implements Serializable {
+
+    /**
+     * The number of searches answered from the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of searches that had to run, including those whose cached result had expired.
+     */
+    private long misses;
+
+    /**
+     * The number of cached results dropped because a write touched a video matching their keywords.
+     */
+    private long invalidations;
+
+    /**
+     * The number of results cached now.
+     */
+    private int size;
+
+    /**
+     * The maximum number of results cached.
+     */
+    private int maxSize;
+
+    /**
+     * @return the share of the searches answered from the cache, 0 if there were none
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,33 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * How often one statement of the services has run since startup
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatementCount implements Serializable {
+
+    /**
+     * The name of the statement in the catalog.
+     */
+    private String name;
+
+    /**
+     * The SQL text of the statement.
+     */
+    private String sql;
+
+    /**
+     * The number of times the statement has run.
+     */
+    private long executions;
+}
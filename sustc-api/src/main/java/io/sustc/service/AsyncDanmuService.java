@@ -0,0 +1,29 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterparts of {@link DanmuService}.
+ * Each method runs its blocking counterpart on a background thread and returns at once,
+ * the future completes with the counterpart's result, or exceptionally with what it threw.
+ */
+public interface AsyncDanmuService {
+
+    /**
+     * @see DanmuService#sendDanmu(AuthInfo, String, String, float)
+     */
+    CompletableFuture<Long> sendDanmuAsync(AuthInfo auth, String bv, String content, float time);
+
+    /**
+     * @see DanmuService#displayDanmu(String, float, float, boolean)
+     */
+    CompletableFuture<List<Long>> displayDanmuAsync(String bv, float timeStart, float timeEnd, boolean filter);
+
+    /**
+     * @see DanmuService#likeDanmu(AuthInfo, long)
+     */
+    CompletableFuture<Boolean> likeDanmuAsync(AuthInfo auth, long id);
+}
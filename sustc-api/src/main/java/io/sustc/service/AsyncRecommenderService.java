@@ -0,0 +1,34 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterparts of {@link RecommenderService}.
+ * Each method runs its blocking counterpart on a background thread and returns at once,
+ * the future completes with the counterpart's result, or exceptionally with what it threw.
+ */
+public interface AsyncRecommenderService {
+
+    /**
+     * @see RecommenderService#recommendNextVideo(String)
+     */
+    CompletableFuture<List<String>> recommendNextVideoAsync(String bv);
+
+    /**
+     * @see RecommenderService#generalRecommendations(int, int)
+     */
+    CompletableFuture<List<String>> generalRecommendationsAsync(int pageSize, int pageNum);
+
+    /**
+     * @see RecommenderService#recommendVideosForUser(AuthInfo, int, int)
+     */
+    CompletableFuture<List<String>> recommendVideosForUserAsync(AuthInfo auth, int pageSize, int pageNum);
+
+    /**
+     * @see RecommenderService#recommendFriends(AuthInfo, int, int)
+     */
+    CompletableFuture<List<Long>> recommendFriendsAsync(AuthInfo auth, int pageSize, int pageNum);
+}
@@ -0,0 +1,45 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.RegisterUserReq;
+import io.sustc.dto.UserInfoResp;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterparts of {@link UserService}.
+ * Each method runs its blocking counterpart on a background thread and returns at once,
+ * the future completes with the counterpart's result, or exceptionally with what it threw.
+ */
+public interface AsyncUserService {
+
+    /**
+     * @see UserService#register(RegisterUserReq)
+     */
+    CompletableFuture<Long> registerAsync(RegisterUserReq req);
+
+    /**
+     * @see UserService#deleteAccount(AuthInfo, long)
+     */
+    CompletableFuture<Boolean> deleteAccountAsync(AuthInfo auth, long mid);
+
+    /**
+     * @see UserService#follow(AuthInfo, long)
+     */
+    CompletableFuture<Boolean> followAsync(AuthInfo auth, long followeeMid);
+
+    /**
+     * @see io.sustc.service.impl.auth.Authenticator#login(AuthInfo)
+     */
+    CompletableFuture<String> loginAsync(AuthInfo auth);
+
+    /**
+     * @see io.sustc.service.impl.auth.Authenticator#logout(String)
+     */
+    CompletableFuture<Boolean> logoutAsync(String token);
+
+    /**
+     * @see UserService#getUserInfo(long)
+     */
+    CompletableFuture<UserInfoResp> getUserInfoAsync(long mid);
+}
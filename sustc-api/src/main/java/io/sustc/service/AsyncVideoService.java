@@ -0,0 +1,66 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.PostVideoReq;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterparts of {@link VideoService}.
+ * Each method runs its blocking counterpart on a background thread and returns at once,
+ * the future completes with the counterpart's result, or exceptionally with what it threw.
+ */
+public interface AsyncVideoService {
+
+    /**
+     * @see VideoService#postVideo(AuthInfo, PostVideoReq)
+     */
+    CompletableFuture<String> postVideoAsync(AuthInfo auth, PostVideoReq req);
+
+    /**
+     * @see VideoService#deleteVideo(AuthInfo, String)
+     */
+    CompletableFuture<Boolean> deleteVideoAsync(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#updateVideoInfo(AuthInfo, String, PostVideoReq)
+     */
+    CompletableFuture<Boolean> updateVideoInfoAsync(AuthInfo auth, String bv, PostVideoReq req);
+
+    /**
+     * @see VideoService#searchVideo(AuthInfo, String, int, int)
+     */
+    CompletableFuture<List<String>> searchVideoAsync(AuthInfo auth, String keywords, int pageSize, int pageNum);
+
+    /**
+     * @see VideoService#getAverageViewRate(String)
+     */
+    CompletableFuture<Double> getAverageViewRateAsync(String bv);
+
+    /**
+     * @see VideoService#getHotspot(String)
+     */
+    CompletableFuture<Set<Integer>> getHotspotAsync(String bv);
+
+    /**
+     * @see VideoService#reviewVideo(AuthInfo, String)
+     */
+    CompletableFuture<Boolean> reviewVideoAsync(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#coinVideo(AuthInfo, String)
+     */
+    CompletableFuture<Boolean> coinVideoAsync(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#likeVideo(AuthInfo, String)
+     */
+    CompletableFuture<Boolean> likeVideoAsync(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#collectVideo(AuthInfo, String)
+     */
+    CompletableFuture<Boolean> collectVideoAsync(AuthInfo auth, String bv);
+}
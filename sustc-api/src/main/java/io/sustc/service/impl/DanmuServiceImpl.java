@@ -6,9 +6,14 @@ import io.sustc.dto.UserRecord;
 import io.sustc.dto.VideoRecord;
 import io.sustc.service.DanmuService;
 import io.sustc.service.DatabaseService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.*;
@@ -23,6 +28,7 @@ import java.util.List;
  */
 @Service
 @Slf4j
+@Transactional
 public class DanmuServiceImpl implements DanmuService {
 
     /**
@@ -35,63 +41,12 @@ public class DanmuServiceImpl implements DanmuService {
     @Autowired
     private DataSource dataSource;
 
-    public boolean Authisvalid(AuthInfo auth)
-    {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty())
-        {
-            return false;
-        }
-        String sql = "SELECT * FROM User_base WHERE UserID = ? AND Password = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            stmt.setString(2, auth.getPassword());
-            ResultSet rs = stmt.executeQuery();
-            //判断qq和wechat是否对应同一个用户
-            if(rs.next())
-            {
-                if(auth.getQq() != null && !auth.getQq().isEmpty())
-                {
-                    String sql1 = "SELECT * FROM User_base WHERE UserID = ? AND QQ = ?";
-                    try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
-                        stmt1.setLong(1, auth.getMid());
-                        stmt1.setString(2, auth.getQq());
-                        ResultSet rs1 = stmt1.executeQuery();
-                        if(!rs1.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                if(auth.getWechat() != null && !auth.getWechat().isEmpty())
-                {
-                    String sql2 = "SELECT * FROM User_base WHERE UserID = ? AND WeChat = ?";
-                    try (Connection conn2 = dataSource.getConnection();
-                         PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
-                        stmt2.setLong(1, auth.getMid());
-                        stmt2.setString(2, auth.getWechat());
-                        ResultSet rs2 = stmt2.executeQuery();
-                        if(!rs2.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
+    @Autowired
+    private Authenticator authenticator;
+
+    @Autowired
+    private StatementCatalog statements;
+
 
 
     /**
@@ -115,14 +70,13 @@ public class DanmuServiceImpl implements DanmuService {
     @Override
     public long sendDanmu(AuthInfo auth, String bv, String content, float time)
     {
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty() || content == null || content.isEmpty() || time < 0)
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || bv == null || bv.isEmpty() || content == null || content.isEmpty() || time < 0)
         {
             return -1;
         }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT * FROM Video_base WHERE BvID = ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             statement.setString(1, bv);
             ResultSet resultSet = statement.executeQuery();
             if (resultSet.next())
@@ -138,9 +92,8 @@ public class DanmuServiceImpl implements DanmuService {
                     return -1;
                 }
                 //是否观看
-                String sql1 = "SELECT * FROM video_viewer WHERE UserID = ? AND BvID = ?";
                 try (Connection conn1 = dataSource.getConnection();
-                     PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                     PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.VIEW)) {
                     stmt1.setLong(1, auth.getMid());
                     stmt1.setString(2, bv);
                     ResultSet rs1 = stmt1.executeQuery();
@@ -152,10 +105,8 @@ public class DanmuServiceImpl implements DanmuService {
                     return -1;
                 }
                 //插入弹幕
-                String sql2 = "INSERT INTO Danmu_base (BvID, UserID, displaytime, Content, PostTime) VALUES (?, ?, ?, ?, ?)"+
-                        "RETURNING DanmuID";
                 try (Connection conn2 = dataSource.getConnection();
-                     PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
+                     PreparedStatement stmt2 = statements.prepare(conn2, SqlStatement.INSERT_DANMU)) {
                     stmt2.setString(1, bv);
                     stmt2.setLong(2, auth.getMid());
                     stmt2.setFloat(3, time);
@@ -200,6 +151,7 @@ public class DanmuServiceImpl implements DanmuService {
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<Long> displayDanmu(String bv, float timeStart, float timeEnd, boolean filter)
     {
         if (bv == null || timeStart < 0 || timeEnd < 0 || timeStart > timeEnd)
@@ -207,9 +159,7 @@ public class DanmuServiceImpl implements DanmuService {
             return null;
         }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT * FROM Video_base WHERE BvID = ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             statement.setString(1, bv);
             ResultSet resultSet = statement.executeQuery();
             //判断是否存在视频
@@ -237,10 +187,8 @@ public class DanmuServiceImpl implements DanmuService {
                 {
 //                    String sql1 = "SELECT * FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? AND DanmuID NOT IN " +
 //                            "(SELECT danmuid FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? GROUP BY Content HAVING COUNT(*) > 1)";
-                    String sql1 = "SELECT * FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? AND DanmuID NOT IN " +
-                              "(SELECT danmuid FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? GROUP BY Content, DanmuID HAVING COUNT(*) > 1)";
                     try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                         PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.DANMUS_IN_RANGE_FILTERED)) {
                         stmt1.setString(1, bv);
                         stmt1.setFloat(2, timeStart);
                         stmt1.setFloat(3, timeEnd);
@@ -270,9 +218,8 @@ public class DanmuServiceImpl implements DanmuService {
                 }
                 else
                 {
-                    String sql1 = "SELECT * FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ?";
                     try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                         PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.DANMUS_IN_RANGE)) {
                         stmt1.setString(1, bv);
                         stmt1.setFloat(2, timeStart);
                         stmt1.setFloat(3, timeEnd);
@@ -324,14 +271,14 @@ public class DanmuServiceImpl implements DanmuService {
      */
     public boolean likeDanmu(AuthInfo auth, long id)
     {
-        if (auth == null || !Authisvalid(auth) || id < 0)
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || id < 0)
         {
             return false;
         }
         //判断是否存在弹幕
-        String sql = "SELECT * FROM Danmu_base WHERE DanmuID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.DANMU_BY_ID)) {
             stmt.setLong(1, id);
             ResultSet rs = stmt.executeQuery();
             if(!rs.next())
@@ -341,9 +288,8 @@ public class DanmuServiceImpl implements DanmuService {
             else
             {
                 //是否观看
-                String sql1 = "SELECT * FROM video_viewer WHERE UserID = ? AND BvID = ?";
                 try (Connection conn1 = dataSource.getConnection();
-                     PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                     PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.VIEW)) {
                     stmt1.setLong(1, auth.getMid());
                     stmt1.setString(2, rs.getString("BvID"));
                     ResultSet rs1 = stmt1.executeQuery();
@@ -354,18 +300,16 @@ public class DanmuServiceImpl implements DanmuService {
                     else
                     {
                         //判断是否已经点赞
-                        String sql2 = "SELECT * FROM Danmu_liked WHERE UserID = ? AND DanmuID = ?";
                         try (Connection conn2 = dataSource.getConnection();
-                             PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
+                             PreparedStatement stmt2 = statements.prepare(conn2, SqlStatement.DANMU_LIKE)) {
                             stmt2.setLong(1, auth.getMid());
                             stmt2.setLong(2, id);
                             ResultSet rs2 = stmt2.executeQuery();
                             if(!rs2.next())
                             {
                                 //点赞
-                                String sql3 = "INSERT INTO danmu_liked (UserID, DanmuID) VALUES (?, ?)";
                                 try (Connection conn3 = dataSource.getConnection();
-                                     PreparedStatement stmt3 = conn3.prepareStatement(sql3)) {
+                                     PreparedStatement stmt3 = statements.prepare(conn3, SqlStatement.INSERT_DANMU_LIKE)) {
                                     stmt3.setLong(1, auth.getMid());
                                     stmt3.setLong(2, id);
                                     stmt3.executeUpdate();
@@ -377,9 +321,8 @@ public class DanmuServiceImpl implements DanmuService {
                             else
                             {
                                 //取消点赞
-                                String sql4 = "DELETE FROM danmu_liked WHERE UserID = ? AND DanmuID = ?";
                                 try (Connection conn4 = dataSource.getConnection();
-                                     PreparedStatement stmt4 = conn4.prepareStatement(sql4)) {
+                                     PreparedStatement stmt4 = statements.prepare(conn4, SqlStatement.DELETE_DANMU_LIKE)) {
                                     stmt4.setLong(1, auth.getMid());
                                     stmt4.setLong(2, id);
                                     stmt4.executeUpdate();
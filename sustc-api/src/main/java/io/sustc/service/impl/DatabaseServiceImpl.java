@@ -2,9 +2,20 @@ package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
 import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportOptions;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.VideoRecord;
 import io.sustc.service.DatabaseService;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.importer.CopyImporter;
+import io.sustc.service.impl.importer.DeltaMerger;
+import io.sustc.service.impl.importer.ParallelImportScheduler;
+import io.sustc.service.impl.importer.RelationImporter;
+import io.sustc.service.impl.importer.SchemaDeferrer;
+import io.sustc.service.impl.importer.StagingImporter;
+import io.sustc.service.impl.importer.StreamingImporter;
+import io.sustc.service.impl.search.SearchResultCache;
+import io.sustc.service.impl.search.VideoSearchEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -15,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -35,6 +47,36 @@ public class DatabaseServiceImpl implements DatabaseService {
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private CopyImporter copyImporter;
+
+    @Autowired
+    private RelationImporter relationImporter;
+
+    @Autowired
+    private ParallelImportScheduler parallelImportScheduler;
+
+    @Autowired
+    private SchemaDeferrer schemaDeferrer;
+
+    @Autowired
+    private StreamingImporter streamingImporter;
+
+    @Autowired
+    private StagingImporter stagingImporter;
+
+    @Autowired
+    private DeltaMerger deltaMerger;
+
+    @Autowired
+    private Authenticator authenticator;
+
+    @Autowired
+    private VideoSearchEngine videoSearchEngine;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
     @Override
     public List<Integer> getGroupMembers() {
         //TODO: replace this with your own student IDs in your group
@@ -54,19 +96,23 @@ public class DatabaseServiceImpl implements DatabaseService {
     private void importDanmuData(List<DanmuRecord> danmuRecords) {
         try (Connection conn = dataSource.getConnection();
              PreparedStatement statement = conn.prepareStatement(
-                     "INSERT INTO Danmu_base (BvID, UserID, DisplayTime, Content, PostTime) VALUES (?, ?, ?, ?, ?)"
+                     "INSERT INTO Danmu_base (DanmuID, BvID, UserID, DisplayTime, Content, PostTime) VALUES (?, ?, ?, ?, ?, ?)"
              )) {
+            // danmu ids follow the record order, the same as the COPY path assigns them
+            long danmuId = 0;
             for (DanmuRecord danmuRecord : danmuRecords) {
-                statement.setString(1, danmuRecord.getBv());
-                statement.setLong(2, danmuRecord.getMid());
-                statement.setFloat(3, danmuRecord.getTime());
-                statement.setString(4, danmuRecord.getContent());
-                statement.setTimestamp(5, danmuRecord.getPostTime());
+                statement.setLong(1, ++danmuId);
+                statement.setString(2, danmuRecord.getBv());
+                statement.setLong(3, danmuRecord.getMid());
+                statement.setFloat(4, danmuRecord.getTime());
+                statement.setString(5, danmuRecord.getContent());
+                statement.setTimestamp(6, danmuRecord.getPostTime());
                 statement.executeUpdate();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        copyImporter.syncDanmuSequence(danmuRecords.size());
     }
 
     private void importUserData(List<UserRecord> userRecords) {
@@ -126,14 +172,132 @@ public class DatabaseServiceImpl implements DatabaseService {
             List<UserRecord> userRecords,
             List<VideoRecord> videoRecords
     ) {
-        // TODO: implement your import logic
+        importData(danmuRecords, userRecords, videoRecords, ImportOptions.defaults());
+    }
+
+    /**
+     * Imports data to an empty database, as {@link #importData(List, List, List)} does,
+     * with the given tuning options.
+     * This is not part of {@link DatabaseService}, callers that tune the import inject this class directly.
+     *
+     * @param danmuRecords danmu records parsed from csv
+     * @param userRecords  user records parsed from csv
+     * @param videoRecords video records parsed from csv
+     * @param options      how the records are written to the database
+     */
+    public void importData(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
 //        configureDataSource(url, username, password);
-        importUserData(userRecords);
-        importVideoData(videoRecords);
-        importDanmuData(danmuRecords);
-        System.out.println(danmuRecords.size());
-        System.out.println(userRecords.size());
-        System.out.println(videoRecords.size());
+        if ((options.isCheckpoint() || options.isResume())
+                && options.getMode() != ImportOptions.Mode.COPY && options.getMode() != ImportOptions.Mode.BINARY_COPY) {
+            throw new IllegalArgumentException("Checkpoints are only supported in the COPY modes, not in " + options.getMode());
+        }
+        authenticator.clear();
+        withSchema(options, () -> load(danmuRecords, userRecords, videoRecords, options));
+        videoSearchEngine.rebuild();
+        searchResultCache.clear();
+        log.info("Imported {} danmus, {} users and {} videos", danmuRecords.size(), userRecords.size(), videoRecords.size());
+    }
+
+    /**
+     * Imports data to an empty database while the records are still being produced,
+     * e.g. decoded from the import files.
+     * The records are always written through {@code COPY}, regardless of {@link ImportOptions#getMode()},
+     * and cannot be checkpointed.
+     *
+     * @param danmuRecords danmu records in the order of the import file
+     * @param userRecords  user records in the order of the import file
+     * @param videoRecords video records in the order of the import file
+     * @param options      how the records are written to the database
+     */
+    public void importStream(
+            Iterator<DanmuRecord> danmuRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
+        if (options.isCheckpoint() || options.isResume()) {
+            throw new IllegalArgumentException("Checkpoints are not supported by the streaming import");
+        }
+        authenticator.clear();
+        withSchema(options, () -> streamingImporter.importStream(danmuRecords, userRecords, videoRecords, options));
+        videoSearchEngine.rebuild();
+        searchResultCache.clear();
+    }
+
+    /**
+     * Merges new or changed records into a database that already holds data, without truncating it.
+     * Users and videos are inserted or updated by {@code mid} and {@code bv},
+     * danmus that already exist with the same content are kept,
+     * and the relation arrays only add entries, so existing likes, follows etc. are never removed.
+     *
+     * @param danmuRecords new danmu records
+     * @param userRecords  new or changed user records
+     * @param videoRecords new or changed video records
+     */
+    public void mergeData(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords
+    ) {
+        DeltaMerger.Merged merged = deltaMerger.mergeData(danmuRecords, userRecords, videoRecords);
+        // only what the batch touched is dropped, the rest of the caches and the index stay warm
+        for (long mid : merged.getMids()) {
+            authenticator.invalidate(mid);
+        }
+        for (DeltaMerger.VideoFields fields : merged.getVideoFields()) {
+            searchResultCache.invalidate(fields.getOwnerMid(), fields.getTitle(), fields.getDescription(), fields.getOwnerName());
+        }
+        for (String bv : merged.getBvs()) {
+            videoSearchEngine.refresh(bv);
+        }
+    }
+
+    /**
+     * Runs {@code load}, dropping the indexes and constraints around it if {@link ImportOptions#isDeferIndexes()}.
+     */
+    private void withSchema(ImportOptions options, Runnable load) {
+        if (!options.isDeferIndexes()) {
+            // an earlier deferred import may have died before putting the schema back
+            schemaDeferrer.restore(options.getParallelism());
+            load.run();
+            return;
+        }
+        SchemaDeferrer.DeferredSchema deferred = schemaDeferrer.drop();
+        try {
+            load.run();
+        } catch (RuntimeException e) {
+            // put the original schema back before reporting the failure
+            try {
+                schemaDeferrer.rebuild(deferred, options.getParallelism());
+            } catch (RuntimeException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            throw e;
+        }
+        schemaDeferrer.rebuild(deferred, options.getParallelism());
+    }
+
+    private void load(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
+        if (options.getMode() == ImportOptions.Mode.ROW) {
+            importUserData(userRecords);
+            importVideoData(videoRecords);
+            importDanmuData(danmuRecords);
+            relationImporter.importAll(danmuRecords, userRecords, videoRecords);
+        } else if (options.getMode() == ImportOptions.Mode.STAGING) {
+            stagingImporter.importData(danmuRecords, userRecords, videoRecords, options);
+        } else {
+            parallelImportScheduler.importData(danmuRecords, userRecords, videoRecords, options);
+        }
     }
 
     /*
@@ -167,6 +331,9 @@ public class DatabaseServiceImpl implements DatabaseService {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        authenticator.clear();
+        videoSearchEngine.clear();
+        searchResultCache.clear();
     }
 
     @Override
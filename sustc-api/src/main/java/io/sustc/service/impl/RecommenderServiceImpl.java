@@ -6,9 +6,15 @@ import io.sustc.dto.UserRecord;
 import io.sustc.dto.VideoRecord;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.RecommenderService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.coalesce.Coalesced;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -25,6 +31,7 @@ import java.util.List;
  */
 @Service
 @Slf4j
+@Transactional(readOnly = true)
 public class RecommenderServiceImpl implements RecommenderService {
 
     /**
@@ -37,65 +44,13 @@ public class RecommenderServiceImpl implements RecommenderService {
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private Authenticator authenticator;
+
+    @Autowired
+    private StatementCatalog statements;
 
-    public boolean Authisvalid(AuthInfo auth)
-    {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty())
-        {
-            return false;
-        }
 
-        String sql = "SELECT * FROM user_base WHERE UserID = ? AND Password = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            stmt.setString(2, auth.getPassword());
-            ResultSet rs = stmt.executeQuery();
-            //判断qq和wechat是否对应同一个用户
-            if(rs.next())
-            {
-                if(auth.getQq() != null && !auth.getQq().isEmpty())
-                {
-                    String sql1 = "SELECT * FROM User_base WHERE UserID = ? AND QQ = ?";
-                    try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
-                        stmt1.setLong(1, auth.getMid());
-                        stmt1.setString(2, auth.getQq());
-                        ResultSet rs1 = stmt1.executeQuery();
-                        if(!rs1.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                if(auth.getWechat() != null && !auth.getWechat().isEmpty())
-                {
-                    String sql2 = "SELECT * FROM User_base WHERE UserID = ? AND WeChat = ?";
-                    try (Connection conn2 = dataSource.getConnection();
-                         PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
-                        stmt2.setLong(1, auth.getMid());
-                        stmt2.setString(2, auth.getWechat());
-                        ResultSet rs2 = stmt2.executeQuery();
-                        if(!rs2.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
     /**
      * Recommends a list of top 5 similar videos for a video.
      * The similarity is defined as the number of users (in the database) who have watched both videos.
@@ -109,6 +64,7 @@ public class RecommenderServiceImpl implements RecommenderService {
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Coalesced
     public List<String> recommendNextVideo(String bv)
     {
         if (bv == null || bv.isEmpty())
@@ -117,10 +73,7 @@ public class RecommenderServiceImpl implements RecommenderService {
         }
         //能不能找到bv对应的视频
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT BvID FROM Video_base WHERE BvID = ?"
-
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_EXISTS)) {
             statement.setString(1, bv);
             ResultSet resultSet = statement.executeQuery();
             if (!resultSet.next()) {
@@ -132,11 +85,7 @@ public class RecommenderServiceImpl implements RecommenderService {
         }
         //找到了bv对应的视频,排序如果相似度一样，那么按照bv的顺序排序
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT BvID FROM Video_base WHERE BvID IN (SELECT BvID FROM video_viewer " +
-                             "WHERE UserID IN (SELECT UserID FROM video_viewer WHERE BvID = ?)) AND BvID != ? " +
-                                "ORDER BY (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID AND UserID IN (SELECT UserID FROM video_viewer WHERE BvID = ?)) DESC, BvID LIMIT 5"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.RECOMMEND_NEXT_VIDEO)) {
             statement.setString(1, bv);
             statement.setString(2, bv);
             statement.setString(3, bv);
@@ -182,6 +131,7 @@ public class RecommenderServiceImpl implements RecommenderService {
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Coalesced
     public List<String> generalRecommendations(int pageSize, int pageNum)
     {
         if (pageSize <= 0 || pageNum <= 0)
@@ -190,17 +140,7 @@ public class RecommenderServiceImpl implements RecommenderService {
         }
         //WHERE ((SELECT COUNT(*) FROM video_viewer WHERE bvid = video_base.bvid)!=0)
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT BvID FROM Video_base  " +
-                             "ORDER BY (" +
-                             "(SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_like WHERE video_base.bvid = video_like.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" //like
-                             + "+ (SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_coin WHERE video_base.bvid = video_coin.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ) )" //coin
-                                + "+ (SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_favorite WHERE video_base.bvid = video_favorite.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" //favortie
-                                        + "+ ((SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM danmu_base WHERE BvID = Video_base.BvID) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" //danmu
-                                                + "+ ((SELECT CAST(SUM(time) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID) / ((SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ) * video_base.duration))" //finish
-                                                        + "* CASE WHEN (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID) = 0 THEN 0 ELSE 1 END )" +
-                             "DESC LIMIT ? OFFSET ?"
-                     )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.GENERAL_RECOMMENDATIONS)) {
             statement.setInt(1, pageSize);
             statement.setInt(2, (pageNum - 1) * pageSize);
             ResultSet resultSet = statement.executeQuery();
@@ -242,17 +182,17 @@ public class RecommenderServiceImpl implements RecommenderService {
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Coalesced
     public List<String> recommendVideosForUser(AuthInfo auth, int pageSize, int pageNum)
     {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty() || pageSize <= 0 || pageNum <= 0 || !Authisvalid(auth))
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if(!principal.isValid() || pageSize <= 0 || pageNum <= 0)
         {
             return null;
         }
         //找出该用户朋友已经看过的视频
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT BvID FROM video_viewer WHERE userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))"
-                             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIEWS_OF_FRIENDS)) {
             statement.setLong(1, auth.getMid());
             statement.setLong(2, auth.getMid());
             ResultSet resultSet = statement.executeQuery();
@@ -263,14 +203,7 @@ public class RecommenderServiceImpl implements RecommenderService {
             else
             {
                 try (Connection conn1 = dataSource.getConnection();
-                     PreparedStatement statement1 = conn1.prepareStatement(
-                             "SELECT BvID FROM video_base WHERE BvID IN " +
-                                     "(SELECT BvID FROM video_viewer WHERE userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))) " +
-                                     "AND BvID NOT IN (SELECT BvID FROM video_viewer WHERE userid = ?) " +
-                                     "ORDER BY (SELECT COUNT(*) FROM video_viewer WHERE BvID = video_base.BvID AND userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))) DESC, " +
-                                     "(SELECT Level FROM user_base WHERE UserID = video_base.ownerid) DESC, " +
-                                     "publictime DESC LIMIT ? OFFSET ?"
-                     )) {
+                     PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.RECOMMEND_VIDEOS_FOR_USER)) {
                     statement1.setLong(1, auth.getMid());
                     statement1.setLong(2, auth.getMid());
                     statement1.setLong(3, auth.getMid());
@@ -315,18 +248,16 @@ public class RecommenderServiceImpl implements RecommenderService {
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Coalesced
     public List<Long> recommendFriends(AuthInfo auth, int pageSize, int pageNum)
     {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty() || pageSize <= 0 || pageNum <= 0 || !Authisvalid(auth))
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if(!principal.isValid() || pageSize <= 0 || pageNum <= 0)
         {
             return null;
         }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT UserID FROM User_base WHERE UserID IN (SELECT UserID FROM user_follow " +
-                             "WHERE FollowerID IN (SELECT FollowerID FROM user_follow WHERE UserID = ?)) AND UserID NOT IN (SELECT FollowerID FROM user_follow WHERE UserID = ?) " +
-                             "ORDER BY (SELECT COUNT(*) FROM user_follow WHERE UserID = User_base.UserID AND FollowerID IN (SELECT FollowerID FROM user_follow WHERE UserID = ?)) DESC, Level DESC LIMIT ? OFFSET ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.RECOMMEND_FRIENDS)) {
             statement.setLong(1, auth.getMid());
             statement.setLong(2, auth.getMid());
             statement.setLong(3, auth.getMid());
@@ -3,9 +3,16 @@ package io.sustc.service.impl;
 import io.sustc.dto.*;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.UserService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import io.sustc.service.impl.search.SearchResultCache;
+import io.sustc.service.impl.search.VideoSearchEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -22,6 +29,7 @@ import java.util.List;
  */
 @Service
 @Slf4j
+@Transactional
 public class UserServiceImpl implements UserService {
 
 /**
@@ -34,64 +42,18 @@ public class UserServiceImpl implements UserService {
 @Autowired
 private DataSource dataSource;
 
-    public boolean Authisvalid(AuthInfo auth)
-    {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty())
-        {
-            return false;
-        }
+@Autowired
+private Authenticator authenticator;
+
+@Autowired
+private StatementCatalog statements;
+
+@Autowired
+private VideoSearchEngine videoSearchEngine;
+
+@Autowired
+private SearchResultCache searchResultCache;
 
-        String sql = "SELECT * FROM user_base WHERE UserID = ? AND Password = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            stmt.setString(2, auth.getPassword());
-            ResultSet rs = stmt.executeQuery();
-            //判断qq和wechat是否对应同一个用户
-            if(rs.next())
-            {
-                if(auth.getQq() != null && !auth.getQq().isEmpty())
-                {
-                    String sql1 = "SELECT * FROM user_base WHERE UserID = ? AND QQ = ?";
-                    try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
-                        stmt1.setLong(1, auth.getMid());
-                        stmt1.setString(2, auth.getQq());
-                        ResultSet rs1 = stmt1.executeQuery();
-                        if(!rs1.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                if(auth.getWechat() != null && !auth.getWechat().isEmpty())
-                {
-                    String sql2 = "SELECT * FROM User_base WHERE UserID = ? AND WeChat = ?";
-                    try (Connection conn2 = dataSource.getConnection();
-                         PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
-                        stmt2.setLong(1, auth.getMid());
-                        stmt2.setString(2, auth.getWechat());
-                        ResultSet rs2 = stmt2.executeQuery();
-                        if(!rs2.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
     /**
      * Registers a new user.
      * {@code password} is a mandatory field, while {@code qq} and {@code wechat} are optional
@@ -160,29 +122,23 @@ private DataSource dataSource;
             }
         }
         if(req.getQq() != null && !req.getQq().isEmpty()) {
-            String sql = "SELECT * FROM User_base WHERE QQ = ?";
             try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = statements.prepare(conn, SqlStatement.USER_BY_QQ)) {
                 stmt.setString(1, req.getQq());
             } catch (SQLException e) {
                 return -1;
             }
         }
         if(req.getWechat() != null && !req.getWechat().isEmpty()) {
-            String sql = "SELECT * FROM User_base WHERE WeChat = ?";
             try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = statements.prepare(conn, SqlStatement.USER_BY_WECHAT)) {
                 stmt.setString(1, req.getWechat());
             } catch (SQLException e) {
                 return -1;
             }
         }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "INSERT INTO User_base (Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) " +
-                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
-                     + "RETURNING UserID"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.INSERT_USER)) {
             short temp = 0;
             statement.setString(2, req.getName());
             statement.setString(3, req.getSex().toString());
@@ -209,7 +165,9 @@ private DataSource dataSource;
             }
             statement.executeUpdate();
             ResultSet rs = statement.getResultSet();
-            return rs.getLong(1);
+            long mid = rs.getLong(1);
+            authenticator.invalidate(mid);
+            return mid;
         } catch (SQLException e) {
             return -1;
         }
@@ -240,7 +198,8 @@ private DataSource dataSource;
     @Override
     public boolean deleteAccount(AuthInfo auth, long mid)
     {
-        if(auth == null || !Authisvalid(auth)) //auth不合法
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if(!principal.isValid()) //auth不合法
         {
             return false;
         }
@@ -248,59 +207,35 @@ private DataSource dataSource;
         {
             return false;
         }
-        //查找auth的信息
-        String sql = "SELECT * FROM User_base WHERE UserID = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            ResultSet rs = stmt.executeQuery();
-            if(!rs.next())
+        //判断auth的身份
+        if(!principal.isSuperuser()) //auth是普通用户
+        {
+            if(auth.getMid() != mid) //auth不是要删除的用户
             {
                 return false;
             }
-            //判断auth的身份
-            if(rs.getString(8).equals("USER")) //auth是普通用户
+        }
+        else //auth是超级用户
+        {
+            if(mid != auth.getMid()) //mid不是auth的mid
             {
-                if(auth.getMid() != mid) //auth不是要删除的用户
+                //找不到mid，或者mid也是超级用户，则不能删除
+                String identity = authenticator.identity(mid);
+                if(identity == null || identity.equals("SUPERUSER"))
                 {
                     return false;
                 }
             }
-            else //auth是超级用户
-            {
-                if(mid != auth.getMid()) //mid不是auth的mid
-                {
-                    String sql1 = "SELECT * FROM User_base WHERE UserID = ?";
-                    try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
-                        stmt1.setLong(1, mid);
-                        ResultSet rs1 = stmt1.executeQuery();
-                        if(!rs1.next())
-                        {
-                            return false;
-                        }
-                        else
-                        {
-                            //如果mid也是超级用户，则不能删除
-                            if(rs1.getString(8).equals("SUPERUSER"))
-                            {
-                                return false;
-                            }
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            return false;
         }
         //删除用户
-        String sql2 = "DELETE FROM User_base WHERE UserID = ?";
         try (Connection conn2 = dataSource.getConnection();
-             PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
+             PreparedStatement stmt2 = statements.prepare(conn2, SqlStatement.DELETE_USER)) {
             stmt2.setLong(1, mid);
+            searchResultCache.invalidateOwner(mid);
             stmt2.executeUpdate();
+            authenticator.invalidate(mid);
+            authenticator.revokeSessions(mid);
+            videoSearchEngine.removeOwner(mid);
             return true;
         } catch (SQLException e) {
             return false;
@@ -324,7 +259,8 @@ private DataSource dataSource;
     @Override
     public boolean follow(AuthInfo auth, long followeeMid)
     {
-        if(auth == null || !Authisvalid(auth)) //auth不合法
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if(!principal.isValid()) //auth不合法
         {
             return false;
         }
@@ -339,9 +275,8 @@ private DataSource dataSource;
         }
         //auth合法
         //能否找到followeeMid
-        String sql = "SELECT * FROM User_base WHERE UserID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.USER_BY_ID)) {
             stmt.setLong(1, followeeMid);
             ResultSet rs = stmt.executeQuery();
             if(!rs.next())
@@ -352,17 +287,15 @@ private DataSource dataSource;
             return false;
         }
         //关注或取消关注
-        String sql1 = "SELECT * FROM User_follow WHERE upid = ? AND followerid = ?";
         try (Connection conn1 = dataSource.getConnection();
-             PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+             PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.FOLLOW)) {
             stmt1.setLong(1, followeeMid);
             stmt1.setLong(2, auth.getMid());
             ResultSet rs1 = stmt1.executeQuery();
             if(rs1.next()) //已关注，取消关注
             {
-                String sql2 = "DELETE FROM User_follow WHERE upid = ? AND followerid = ?";
                 try (Connection conn2 = dataSource.getConnection();
-                     PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
+                     PreparedStatement stmt2 = statements.prepare(conn2, SqlStatement.DELETE_FOLLOW)) {
                     stmt2.setLong(1, followeeMid);
                     stmt2.setLong(2, auth.getMid());
                     stmt2.executeUpdate();
@@ -373,9 +306,8 @@ private DataSource dataSource;
             }
             else //未关注，关注
             {
-                String sql3 = "INSERT INTO User_follow (upid, followerid) VALUES (?, ?)";
                 try (Connection conn3 = dataSource.getConnection();
-                     PreparedStatement stmt3 = conn3.prepareStatement(sql3)) {
+                     PreparedStatement stmt3 = statements.prepare(conn3, SqlStatement.INSERT_FOLLOW)) {
                     stmt3.setLong(1, followeeMid);
                     stmt3.setLong(2, auth.getMid());
                     stmt3.executeUpdate();
@@ -401,6 +333,7 @@ private DataSource dataSource;
      * If any of the corner case happened, {@code null} shall be returned.
      */
     @Override
+    @Transactional(readOnly = true)
     public UserInfoResp getUserInfo(long mid)
     {
         if(mid < 0)
@@ -411,9 +344,8 @@ private DataSource dataSource;
         UserInfoResp userInfoResp = new UserInfoResp();
         ResultSet rs_user_base;
         //查找用户基本信息
-        String sql = "SELECT * FROM User_base WHERE UserID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.USER_BY_ID)) {
             stmt.setLong(1, mid);
             rs_user_base= stmt.executeQuery();
             if(!rs_user_base.next())
@@ -430,9 +362,8 @@ private DataSource dataSource;
             throw new RuntimeException(e);
         }
         //查找用户关注的人
-        String sql1 = "SELECT * FROM User_follow WHERE followerid = ?";
         try (Connection conn1 = dataSource.getConnection();
-             PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+             PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.FOLLOWINGS_OF_USER)) {
             stmt1.setLong(1, mid);
             ResultSet rs1 = stmt1.executeQuery();
             ResultSet rs2=rs1;
@@ -453,9 +384,8 @@ private DataSource dataSource;
             return null;
         }
         //查找用户粉丝
-        String sql2 = "SELECT * FROM User_follow WHERE upid = ?";
         try (Connection conn2 = dataSource.getConnection();
-             PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
+             PreparedStatement stmt2 = statements.prepare(conn2, SqlStatement.FOLLOWERS_OF_USER)) {
             stmt2.setLong(1, mid);
             ResultSet rs3 = stmt2.executeQuery();
             ResultSet rs4=rs3;
@@ -476,9 +406,8 @@ private DataSource dataSource;
             return null;
         }
         //查找用户观看过的视频
-        String sql3 = "SELECT * FROM video_viewer WHERE UserID = ?";
         try (Connection conn3 = dataSource.getConnection();
-             PreparedStatement stmt3 = conn3.prepareStatement(sql3)) {
+             PreparedStatement stmt3 = statements.prepare(conn3, SqlStatement.VIEWS_OF_USER)) {
             stmt3.setLong(1, mid);
             ResultSet rs5 = stmt3.executeQuery();
             ResultSet rs6=rs5;
@@ -499,9 +428,8 @@ private DataSource dataSource;
             return null;
         }
         //查找用户点赞过的视频
-        String sql4 = "SELECT * FROM video_like WHERE UserID = ?";
         try (Connection conn4 = dataSource.getConnection();
-             PreparedStatement stmt4 = conn4.prepareStatement(sql4)) {
+             PreparedStatement stmt4 = statements.prepare(conn4, SqlStatement.LIKES_OF_USER)) {
             stmt4.setLong(1, mid);
             ResultSet rs7 = stmt4.executeQuery();
             ResultSet rs8=rs7;
@@ -522,9 +450,8 @@ private DataSource dataSource;
             return null;
         }
         //查找用户收藏过的视频
-        String sql5 = "SELECT * FROM video_favorite WHERE UserID = ?";
         try (Connection conn5 = dataSource.getConnection();
-             PreparedStatement stmt5 = conn5.prepareStatement(sql5)) {
+             PreparedStatement stmt5 = statements.prepare(conn5, SqlStatement.FAVORITES_OF_USER)) {
             stmt5.setLong(1, mid);
             ResultSet rs9 = stmt5.executeQuery();
             ResultSet rs10=rs9;
@@ -545,9 +472,8 @@ private DataSource dataSource;
             return null;
         }
         //查找用户发布过的视频
-        String sql6 = "SELECT * FROM video_base WHERE ownerID = ?";
         try (Connection conn6 = dataSource.getConnection();
-             PreparedStatement stmt6 = conn6.prepareStatement(sql6)) {
+             PreparedStatement stmt6 = statements.prepare(conn6, SqlStatement.VIDEOS_OF_OWNER)) {
             stmt6.setLong(1, mid);
             ResultSet rs11 = stmt6.executeQuery();
             ResultSet rs12=rs11;
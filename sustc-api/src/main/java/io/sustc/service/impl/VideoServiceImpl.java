@@ -3,9 +3,17 @@ package io.sustc.service.impl;
 import io.sustc.dto.*;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.VideoService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.coalesce.Coalesced;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import io.sustc.service.impl.search.SearchResultCache;
+import io.sustc.service.impl.search.VideoSearchEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
 import javax.swing.*;
@@ -25,6 +33,7 @@ import java.util.Map;
  */
 @Service
 @Slf4j
+@Transactional
 public class VideoServiceImpl implements VideoService {
 
 /**
@@ -37,93 +46,24 @@ public class VideoServiceImpl implements VideoService {
 @Autowired
 private DataSource dataSource;
 
+@Autowired
+private Authenticator authenticator;
+
+@Autowired
+private StatementCatalog statements;
+
+@Autowired
+private VideoSearchEngine videoSearchEngine;
+
+@Autowired
+private SearchResultCache searchResultCache;
+
 
     public boolean isvalidvideo(PostVideoReq req)
     {
         return req != null && req.getTitle() != null && !req.getTitle().isEmpty() && !(req.getDuration() < 10) && !req.getPublicTime().before(Timestamp.valueOf(LocalDateTime.now()));
     }
 
-    public boolean isSuperuser(AuthInfo auth)
-    {
-        if(auth == null || auth.getMid() < 0)
-        {
-            return false;
-        }
-        String sql = "SELECT * FROM User_base WHERE UserID = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            ResultSet rs = stmt.executeQuery();
-            if(rs.next())
-            {
-                return String.valueOf(rs.getInt(8)).equals("SUPERUSER");
-            }
-            else
-            {
-                return false;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
-    public boolean Authisvalid(AuthInfo auth)
-    {
-        if(auth == null || auth.getMid() < 0 || auth.getPassword() == null || auth.getPassword().isEmpty())
-        {
-            return false;
-        }
-
-        String sql = "SELECT * FROM user_base WHERE UserID = ? AND Password = ?";
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, auth.getMid());
-            stmt.setString(2, auth.getPassword());
-            ResultSet rs = stmt.executeQuery();
-            //判断qq和wechat是否对应同一个用户
-            if(rs.next())
-            {
-                if(auth.getQq() != null && !auth.getQq().isEmpty())
-                {
-                    String sql1 = "SELECT * FROM User_base WHERE UserID = ? AND QQ = ?";
-                    try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
-                        stmt1.setLong(1, auth.getMid());
-                        stmt1.setString(2, auth.getQq());
-                        ResultSet rs1 = stmt1.executeQuery();
-                        if(!rs1.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                if(auth.getWechat() != null && !auth.getWechat().isEmpty())
-                {
-                    String sql2 = "SELECT * FROM User_base WHERE UserID = ? AND WeChat = ?";
-                    try (Connection conn2 = dataSource.getConnection();
-                         PreparedStatement stmt2 = conn2.prepareStatement(sql2)) {
-                        stmt2.setLong(1, auth.getMid());
-                        stmt2.setString(2, auth.getWechat());
-                        ResultSet rs2 = stmt2.executeQuery();
-                        if(!rs2.next())
-                        {
-                            return false;
-                        }
-                    } catch (SQLException e) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     /**
      * Posts a video. Its commit time shall be {@link LocalDateTime#now()}.
@@ -148,13 +88,13 @@ private DataSource dataSource;
     @Override
     public String postVideo(AuthInfo auth, PostVideoReq req)
     {
-        if (auth == null || !Authisvalid(auth) || req == null || req.getTitle() == null || req.getTitle().isEmpty() || req.getDuration() < 10 || req.getPublicTime().before(Timestamp.valueOf(LocalDateTime.now())))
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || req == null || req.getTitle() == null || req.getTitle().isEmpty() || req.getDuration() < 10 || req.getPublicTime().before(Timestamp.valueOf(LocalDateTime.now())))
         {
             return null;
         }
-        String sql = "SELECT * FROM Video_base WHERE Title = ? AND OwnerID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.VIDEO_BY_TITLE_AND_OWNER)) {
             stmt.setString(1, req.getTitle());
             stmt.setLong(2, auth.getMid());
             ResultSet rs = stmt.executeQuery();
@@ -164,16 +104,22 @@ private DataSource dataSource;
             }
             else
             {
-                String sql1 = "INSERT INTO Video_base (Title, OwnerID, CommitTime, PublicTime, Duration) VALUES (?, ?, ?, ?, ?)";
                 try (Connection conn1 = dataSource.getConnection();
-                     PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                     PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.INSERT_VIDEO)) {
                     stmt1.setString(1, req.getTitle());
                     stmt1.setLong(2, auth.getMid());
                     stmt1.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
                     stmt1.setTimestamp(4, req.getPublicTime());
                     stmt1.setFloat(5, req.getDuration());
-                    stmt1.executeUpdate();
-                    return req.getTitle();
+                    ResultSet rs1 = stmt1.executeQuery();
+                    if (!rs1.next())
+                    {
+                        return null;
+                    }
+                    String bv = rs1.getString(1);
+                    videoSearchEngine.refresh(bv);
+                    searchResultCache.invalidate(bv);
+                    return bv;
                 } catch (SQLException e) {
                     return null;
                 }
@@ -202,24 +148,25 @@ private DataSource dataSource;
     @Override
     public boolean deleteVideo(AuthInfo auth, String bv)
     {
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty())
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || bv == null || bv.isEmpty())
         {
             return false;
         }
-        String sql = "SELECT * FROM Video_base WHERE BvID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             stmt.setString(1, bv);
             ResultSet rs = stmt.executeQuery();
             if(rs.next())
             {
-                if(rs.getLong("OwnerID") == auth.getMid() || isSuperuser(auth))
+                if(rs.getLong("OwnerID") == auth.getMid() || principal.isSuperuser())
                 {
-                    String sql1 = "DELETE FROM Video_base WHERE BvID = ?";
                     try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                         PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.DELETE_VIDEO)) {
                         stmt1.setString(1, bv);
+                        searchResultCache.invalidate(bv);
                         stmt1.executeUpdate();
+                        videoSearchEngine.remove(bv);
                         return true;
                     } catch (SQLException e) {
                         return false;
@@ -263,14 +210,14 @@ private DataSource dataSource;
     @Override
     public boolean updateVideoInfo(AuthInfo auth, String bv, PostVideoReq req)
     {
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty() || req == null || req.getTitle() == null || req.getTitle().isEmpty() || req.getDuration() < 10 || req.getPublicTime().before(Timestamp.valueOf(LocalDateTime.now())))
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || bv == null || bv.isEmpty() || req == null || req.getTitle() == null || req.getTitle().isEmpty() || req.getDuration() < 10 || req.getPublicTime().before(Timestamp.valueOf(LocalDateTime.now())))
         {
             return false;
         }
         //是否存在这个视频
-        String sql = "SELECT * FROM Video_base WHERE BvID = ?";
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             stmt.setString(1, bv);
             ResultSet rs = stmt.executeQuery();
             if(rs.next())
@@ -291,16 +238,19 @@ private DataSource dataSource;
                             //是否需要重新审核
                             if(rs.getTimestamp("ReviewTime") != null)
                             {
-                                String sql1 = "UPDATE Video_base SET Title = ?, PublicTime = ?, Description = ?, Reviewer = ?, ReviewTime = ? WHERE BvID = ?";
                                 try (Connection conn1 = dataSource.getConnection();
-                                     PreparedStatement stmt1 = conn1.prepareStatement(sql1)) {
+                                     PreparedStatement stmt1 = statements.prepare(conn1, SqlStatement.UPDATE_VIDEO)) {
                                     stmt1.setString(1, req.getTitle());
                                     stmt1.setTimestamp(2, req.getPublicTime());
                                     stmt1.setString(3, req.getDescription());
                                     stmt1.setNull(4, Types.BIGINT);
                                     stmt1.setNull(5, Types.TIMESTAMP);
                                     stmt1.setString(6, bv);
+                                    //修改前后的视频都可能出现在缓存的搜索结果里
+                                    searchResultCache.invalidate(bv);
                                     stmt1.executeUpdate();
+                                    videoSearchEngine.refresh(bv);
+                                    searchResultCache.invalidate(bv);
                                     return true;
                                 } catch (SQLException e) {
                                     return false;
@@ -390,205 +340,18 @@ private DataSource dataSource;
 
 
     @Override
+    @Transactional(readOnly = true)
+    @Coalesced
     public List<String> searchVideo(AuthInfo auth, String keywords, int pageSize, int pageNum)
     {
-        class node
-        {
-            String bv;
-            int relevance;
-            int views;
-            int owner;
-            int reviewedorpublished;
-            public node(String bv, int relevance, int views, int owner, int reviewedorpublished)
-            {
-                this.bv = bv;
-                this.relevance = relevance;
-                this.views = views;
-                this.owner = owner;
-                this.reviewedorpublished = reviewedorpublished;
-            }
-        }
-
-        if (auth == null || !Authisvalid(auth) || keywords == null || keywords.isEmpty() || pageSize <= 0 || pageNum <= 0)
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || keywords == null || keywords.isEmpty() || pageSize <= 0 || pageNum <= 0)
         {
             return null;
         }
-        String[] keyword = keywords.split(" ");
-        //先查询有多少个视频
-        int videonum = 0;
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT COUNT(*) FROM Video_base"
-             )) {
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next())
-                {
-                    //获取视频总数量
-                    videonum = resultSet.getInt(1);
-                }
-            }
-        } catch (SQLException e) {
-
-        }
-        node [] nodes = new node[videonum];
-        int cnt=-1;
-        // 对每个keyword都进行检测出现次数，然后在nodes中views+1,
-        // 同时使用哈希表映射bv和对应的nodes节点编号
-        // 如果keyword在title中出现，relevance+1
-        // 如果keyword在description中出现，relevance+1
-        // 如果keyword在ownername中出现，relevance+1
-        Map<String, Integer> hashMap = new HashMap<>();
-        // Unreviewed or unpublished videos are only visible to superusers or the video owner.
-        for (int i = 0; i < keyword.length; i++)
-        {
-            // 处理 title
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT * FROM Video_base WHERE Title ILIKE ?")) {
-                statement.setString(1, "%" + keyword[i] + "%");
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    while (resultSet.next()) {
-                        String bvID = resultSet.getString("BvID");
-                        if (!hashMap.containsKey(bvID)) {
-                            cnt++;
-                            hashMap.put(bvID, cnt);
-
-                            int pd=1;
-                            if(resultSet.getTimestamp("PublicTime") == null || resultSet.getTimestamp("ReviewTime") == null)
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("PublicTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果发布时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("ReviewTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果审核时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            nodes[cnt] = new node(bvID, 1, resultSet.getInt("Views"), resultSet.getInt("OwnerID"), pd);
-                        } else {
-                            int nodeIndex = hashMap.get(bvID);
-                            nodes[nodeIndex].relevance++;
-                        }
-                    }
-                }
-            } catch (SQLException e) {
-                log.error("Failed to search video", e);
-            }
-            // 处理 description
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT * FROM Video_base WHERE description ILIKE ?")) {
-                statement.setString(1, "%" + keyword[i] + "%");
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    while (resultSet.next()) {
-                        String bvID = resultSet.getString("BvID");
-                        if (!hashMap.containsKey(bvID)) {
-                            cnt++;
-                            hashMap.put(bvID, cnt);
-
-                            int pd=1;
-                            if(resultSet.getTimestamp("PublicTime") == null || resultSet.getTimestamp("ReviewTime") == null)
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("PublicTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果发布时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("ReviewTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果审核时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            nodes[cnt] = new node(bvID, 1, resultSet.getInt("Views"), resultSet.getInt("OwnerID"), pd);
-                        } else {
-                            int nodeIndex = hashMap.get(bvID);
-                            nodes[nodeIndex].relevance++;
-                        }
-                    }
-                }
-            } catch (SQLException e) {
-                log.error("Failed to search video", e);
-            }
-            // 处理 ownername
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT * FROM Video_base WHERE ownername ILIKE ?")) {
-                statement.setString(1, "%" + keyword[i] + "%");
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    while (resultSet.next()) {
-                        String bvID = resultSet.getString("BvID");
-                        if (!hashMap.containsKey(bvID)) {
-                            cnt++;
-                            hashMap.put(bvID, cnt);
-
-                            int pd=1;
-                            if(resultSet.getTimestamp("PublicTime") == null || resultSet.getTimestamp("ReviewTime") == null)
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("PublicTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果发布时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            else if(resultSet.getTimestamp("ReviewTime").before(Timestamp.valueOf(LocalDateTime.now()))) //如果审核时间在当前时间之前
-                            {
-                                pd = 0;
-                            }
-                            nodes[cnt] = new node(bvID, 1, resultSet.getInt("Views"), resultSet.getInt("OwnerID"), pd);
-                        } else {
-                            int nodeIndex = hashMap.get(bvID);
-                            nodes[nodeIndex].relevance++;
-                        }
-                    }
-                }
-            } catch (SQLException e) {
-                log.error("Failed to search video", e);
-            }
-        }
-        int cnt1 = -1;
-        node [] nodes1 = new node[cnt+1];
-        //筛选可视视频
-        for (int i = 0; i < nodes.length; i++)
-        {
-            if(nodes[i].reviewedorpublished == 0)
-            {
-                if(!isSuperuser(auth) && nodes[i].owner != auth.getMid())
-                {
-
-                }
-                else
-                {
-                    cnt1++;
-                    nodes1[cnt1] = nodes[i];
-                }
-            }
-            else
-            {
-                cnt1++;
-                nodes1[cnt1] = nodes[i];
-            }
-        }
-        // 对nodes1进行排序,先按照relevance排序，再按照views排序
-        Arrays.sort(nodes1, (o1, o2) -> {
-            if(o1.relevance == o2.relevance)
-            {
-                return o1.views - o2.views;
-            }
-            else
-            {
-                return o1.relevance - o2.relevance;
-            }
-        });
-
-        // 获取对应页的视频
-        List<String> ans = null;
-        for (int i = (pageNum - 1) * pageSize; i < pageNum * pageSize && i < cnt1; i++)
-        {
-            ans.add(nodes1[i].bv);
-        }
-        return ans;
+        //先查缓存，未命中时再交给搜索引擎
+        return searchResultCache.get(principal, keywords, pageSize, pageNum,
+                () -> videoSearchEngine.search(principal, keywords, pageSize, pageNum));
     }
 
     /**
@@ -605,6 +368,8 @@ private DataSource dataSource;
      * If any of the corner case happened, {@code -1} shall be returned.
      */
     @Override
+    @Transactional(readOnly = true)
+    @Coalesced
     public double getAverageViewRate(String bv)
     {
         if (bv == null || bv.isEmpty())
@@ -613,26 +378,20 @@ private DataSource dataSource;
         }
        //先查有没有这个视频
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT * FROM Video_base WHERE BvID = ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             statement.setString(1, bv);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next())
                 {
                     //再查有没有人看过这个视频
                     try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement statement1 = conn1.prepareStatement(
-                                 "SELECT * FROM Video_viewer WHERE BvID = ?"
-                         )) {
+                         PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.VIEWS_OF_VIDEO)) {
                         statement1.setString(1, bv);
                         try (ResultSet resultSet1 = statement1.executeQuery()) {
                             if (resultSet1.next()) {
                                 //获取所有看过这个视频的人的观看时间的平均值
                                 try (Connection conn2 = dataSource.getConnection();
-                                     PreparedStatement statement2 = conn2.prepareStatement(
-                                             "SELECT AVG(Time) FROM Video_viewer WHERE BvID = ?"
-                                     )) {
+                                     PreparedStatement statement2 = statements.prepare(conn2, SqlStatement.AVERAGE_VIEW_TIME)) {
                                     statement2.setString(1, bv);
                                     try (ResultSet resultSet2 = statement2.executeQuery()) {
                                         if (resultSet2.next()) {
@@ -674,6 +433,8 @@ private DataSource dataSource;
      * If any of the corner case happened, an empty set shall be returned.
      */
     @Override
+    @Transactional(readOnly = true)
+    @Coalesced
     public Set<Integer> getHotspot(String bv)
     {
         if (bv == null || bv.isEmpty())
@@ -682,27 +443,21 @@ private DataSource dataSource;
         }
         //先查有无这个视频
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT * FROM Video_base WHERE BvID = ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_BY_BV)) {
             statement.setString(1, bv);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next())
                 {
                     //再查有无人发过弹幕
                     try (Connection conn1 = dataSource.getConnection();
-                         PreparedStatement statement1 = conn1.prepareStatement(
-                                 "SELECT * FROM Danmu_base WHERE BvID = ?"
-                         )) {
+                         PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.DANMUS_OF_VIDEO)) {
                         statement1.setString(1, bv);
                         try (ResultSet resultSet1 = statement1.executeQuery()) {
                             if (resultSet1.next()) {
                                 int[] cnt = new int[(int) resultSet.getFloat("Duration") / 10 + 1];
                                 //获取所有弹幕的时间
                                 try (Connection conn2 = dataSource.getConnection();
-                                     PreparedStatement statement2 = conn2.prepareStatement(
-                                             "SELECT * FROM Danmu_base WHERE BvID = ?"
-                                     )) {
+                                     PreparedStatement statement2 = statements.prepare(conn2, SqlStatement.DANMUS_OF_VIDEO)) {
                                     statement2.setString(1, bv);
                                     try (ResultSet resultSet2 = statement2.executeQuery()) {
                                         while (resultSet2.next()) {
@@ -768,37 +523,34 @@ private DataSource dataSource;
     @Override
     public boolean reviewVideo(AuthInfo auth, String bv)
     {
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty())
+        AuthPrincipal principal = authenticator.resolve(auth);
+        if (!principal.isValid() || bv == null || bv.isEmpty())
         {
             return false;
         }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT OwnerID FROM Video_base WHERE BvID = ?"
-             )) {
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_OWNER)) {
             statement.setString(1, bv);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
                     //判断是否是超级用户
-                    if (!isSuperuser(auth)) {
+                    if (!principal.isSuperuser()) {
                         return false;
                     }
                     //如果不是这个视频的主人
                     if (resultSet.getLong("OwnerID") != auth.getMid()) {
                         //判断是否已经审核过
-                        PreparedStatement statement1 = conn.prepareStatement(
-                                "SELECT * FROM Video_base WHERE BvID = ? AND Reviewer IS NULL"
-                        );
+                        PreparedStatement statement1 = statements.prepare(conn, SqlStatement.UNREVIEWED_VIDEO);
                         statement1.setString(1, bv);
                         ResultSet resultSet1 = statement1.executeQuery();
                         if (resultSet1.next()) {
-                            PreparedStatement statement2 = conn.prepareStatement(
-                                    "UPDATE Video_base SET Reviewer = ?, ReviewTime = ? WHERE BvID = ?"
-                            );
+                            PreparedStatement statement2 = statements.prepare(conn, SqlStatement.REVIEW_VIDEO);
                             statement2.setLong(1, auth.getMid());
                             statement2.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
                             statement2.setString(3, bv);
                             statement2.executeUpdate();
+                            videoSearchEngine.refresh(bv);
+                            searchResultCache.invalidate(bv);
                             return true;
                         }
                     }
@@ -833,95 +585,48 @@ private DataSource dataSource;
     @Override
     public boolean coinVideo(AuthInfo auth, String bv)
     {
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty())
+        AuthPrincipal principal = authenticator.resolve(auth);
+        //先判断该用户能否搜索到这个视频，且不是这个视频的主人
+        if (bv == null || bv.isEmpty() || !canInteract(principal, bv))
         {
             return false;
         }
-        //先查询有多少个视频
-        int videonum = 0;
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT COUNT(*) FROM Video_base"
-             )) {
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next())
-                {
-                    //获取视频总数量
-                    videonum = resultSet.getInt(1);
+        //再判断该用户是否已经捐过币了
+        try (Connection conn1 = dataSource.getConnection();
+             PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.VIDEO_COIN)) {
+            statement1.setLong(1, principal.getMid());
+            statement1.setString(2, bv);
+            try (ResultSet resultSet1 = statement1.executeQuery()) {
+                if (resultSet1.next()) {
+                    return false;
                 }
             }
-        } catch (SQLException e) {
-        }
-        //先判断该用户能否搜索到这个视频
-        if(searchVideo(auth, bv, videonum,1).contains(bv))
-        {
-            //再判断该用户是否是这个视频的主人
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT OwnerID FROM Video_base WHERE BvID = ?"
-                 )) {
-                statement.setString(1, bv);
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        if (resultSet.getLong("OwnerID") != auth.getMid()) {
-                            //再判断该用户是否已经捐过币了
-                            try (Connection conn1 = dataSource.getConnection();
-                                 PreparedStatement statement1 = conn1.prepareStatement(
-                                         "SELECT * FROM Video_coin WHERE UserID = ? AND BvID = ?"
-                                 )) {
-                                statement1.setLong(1, auth.getMid());
-                                statement1.setString(2, bv);
-                                try (ResultSet resultSet1 = statement1.executeQuery()) {
-                                    if (resultSet1.next()) {
-                                        return false;
-                                    } else {
-                                        //再判断该用户是否有币
-                                        try (Connection conn2 = dataSource.getConnection();
-                                             PreparedStatement statement2 = conn2.prepareStatement(
-                                                     "SELECT * FROM User_base WHERE UserID = ?"
-                                             )) {
-                                            statement2.setLong(1, auth.getMid());
-                                            try (ResultSet resultSet2 = statement2.executeQuery()) {
-                                                if (resultSet2.next()) {
-                                                    if (resultSet2.getInt("Coins") > 0) {
-                                                        //捐币
-                                                        try (Connection conn3 = dataSource.getConnection();
-                                                             PreparedStatement statement3 = conn3.prepareStatement(
-                                                                     "INSERT INTO Video_coin (UserID, BvID) VALUES (?, ?)"
-                                                             )) {
-                                                            statement3.setLong(1, auth.getMid());
-                                                            statement3.setString(2, bv);
-                                                            statement3.executeUpdate();
-                                                            //减少用户的币
-                                                            try (Connection conn4 = dataSource.getConnection();
-                                                                 PreparedStatement statement4 = conn4.prepareStatement(
-                                                                         "UPDATE User_base SET Coin = ? WHERE UserID = ?"
-                                                                 )) {
-                                                                statement4.setInt(1, resultSet2.getInt("Coins") - 1);
-                                                                statement4.setLong(2, auth.getMid());
-                                                                statement4.executeUpdate();
-                                                                return true;
-                                                            }
-                                                        }
-                                                    } else {
-                                                        return false;
-                                                    }
-                                                }
-                                            }
-                                        } catch (SQLException e) {
-                                            log.error("Failed to coin video", e);
-                                        }
-                                    }
-                                }
-                            } catch (SQLException e) {
-                                log.error("Failed to coin video", e);
-                            }
+            //再判断该用户是否有币
+            try (Connection conn2 = dataSource.getConnection();
+                 PreparedStatement statement2 = statements.prepare(conn2, SqlStatement.USER_BY_ID)) {
+                statement2.setLong(1, principal.getMid());
+                try (ResultSet resultSet2 = statement2.executeQuery()) {
+                    if (resultSet2.next() && resultSet2.getInt("Coins") > 0) {
+                        //捐币
+                        try (Connection conn3 = dataSource.getConnection();
+                             PreparedStatement statement3 = statements.prepare(conn3, SqlStatement.INSERT_VIDEO_COIN)) {
+                            statement3.setLong(1, principal.getMid());
+                            statement3.setString(2, bv);
+                            statement3.executeUpdate();
+                        }
+                        //减少用户的币
+                        try (Connection conn4 = dataSource.getConnection();
+                             PreparedStatement statement4 = statements.prepare(conn4, SqlStatement.UPDATE_USER_COIN)) {
+                            statement4.setInt(1, resultSet2.getInt("Coins") - 1);
+                            statement4.setLong(2, principal.getMid());
+                            statement4.executeUpdate();
+                            return true;
                         }
                     }
                 }
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
             }
+        } catch (SQLException e) {
+            log.error("Failed to coin video", e);
         }
         return false;
     }
@@ -946,79 +651,40 @@ private DataSource dataSource;
     @Override
     public boolean likeVideo(AuthInfo auth, String bv)
     {
-        //仿照coinVideo来编写
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty())
+        AuthPrincipal principal = authenticator.resolve(auth);
+        //先判断该用户能否搜索到这个视频，且不是这个视频的主人
+        if (bv == null || bv.isEmpty() || !canInteract(principal, bv))
         {
             return false;
         }
-        //先查询有多少个视频
-        int videonum = 0;
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT COUNT(*) FROM Video_base"
-             )) {
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next())
-                {
-                    //获取视频总数量
-                    videonum = resultSet.getInt(1);
-                }
-            }
-        } catch (SQLException e) {
-        }
-        //先判断该用户能否搜索到这个视频
-        if(searchVideo(auth, bv, videonum,1).contains(bv))
-        {
-            //再判断该用户是否是这个视频的主人，如果是主人则不能点赞
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT OwnerID FROM Video_base WHERE BvID = ?"
-                 )) {
-                statement.setString(1, bv);
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        if (resultSet.getLong("OwnerID") != auth.getMid()) {
-                            //再判断该用户是否已经点过赞了
-                            try (Connection conn1 = dataSource.getConnection();
-                                 PreparedStatement statement1 = conn1.prepareStatement(
-                                         "SELECT * FROM Video_like WHERE UserID = ? AND BvID = ?"
-                                 )) {
-                                statement1.setLong(1, auth.getMid());
-                                statement1.setString(2, bv);
-                                try (ResultSet resultSet1 = statement1.executeQuery()) {
-                                    if (resultSet1.next()) {
-                                        //如果点过赞了，则取消点赞
-                                        try (Connection conn2 = dataSource.getConnection();
-                                             PreparedStatement statement2 = conn2.prepareStatement(
-                                                     "DELETE FROM Video_like WHERE UserID = ? AND BvID = ?"
-                                             )) {
-                                            statement2.setLong(1, auth.getMid());
-                                            statement2.setString(2, bv);
-                                            statement2.executeUpdate();
-                                            return false;
-                                        }
-                                    } else {
-                                        //如果没点过赞，则点赞
-                                        try (Connection conn3 = dataSource.getConnection();
-                                             PreparedStatement statement3 = conn3.prepareStatement(
-                                                     "INSERT INTO Video_like (UserID, BvID) VALUES (?, ?)"
-                                             )) {
-                                            statement3.setLong(1, auth.getMid());
-                                            statement3.setString(2, bv);
-                                            statement3.executeUpdate();
-                                            return true;
-                                        }
-                                    }
-                                }
-                            } catch (SQLException e) {
-                                log.error("Failed to like video", e);
-                            }
-                        }
+        //再判断该用户是否已经点过赞了
+        try (Connection conn1 = dataSource.getConnection();
+             PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.VIDEO_LIKE)) {
+            statement1.setLong(1, principal.getMid());
+            statement1.setString(2, bv);
+            try (ResultSet resultSet1 = statement1.executeQuery()) {
+                if (resultSet1.next()) {
+                    //如果点过赞了，则取消点赞
+                    try (Connection conn2 = dataSource.getConnection();
+                         PreparedStatement statement2 = statements.prepare(conn2, SqlStatement.DELETE_VIDEO_LIKE)) {
+                        statement2.setLong(1, principal.getMid());
+                        statement2.setString(2, bv);
+                        statement2.executeUpdate();
+                        return false;
+                    }
+                } else {
+                    //如果没点过赞，则点赞
+                    try (Connection conn3 = dataSource.getConnection();
+                         PreparedStatement statement3 = statements.prepare(conn3, SqlStatement.INSERT_VIDEO_LIKE)) {
+                        statement3.setLong(1, principal.getMid());
+                        statement3.setString(2, bv);
+                        statement3.executeUpdate();
+                        return true;
                     }
                 }
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
             }
+        } catch (SQLException e) {
+            log.error("Failed to like video", e);
         }
         return false;
     }
@@ -1043,80 +709,63 @@ private DataSource dataSource;
     @Override
     public boolean collectVideo(AuthInfo auth, String bv)
     {
-        //仿照coinVideo来编写
-        if (auth == null || !Authisvalid(auth) || bv == null || bv.isEmpty())
+        AuthPrincipal principal = authenticator.resolve(auth);
+        //先判断该用户能否搜索到这个视频，且不是这个视频的主人
+        if (bv == null || bv.isEmpty() || !canInteract(principal, bv))
         {
             return false;
         }
-        //先查询有多少个视频
-        int videonum = 0;
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement statement = conn.prepareStatement(
-                     "SELECT COUNT(*) FROM Video_base"
-             )) {
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next())
-                {
-                    //获取视频总数量
-                    videonum = resultSet.getInt(1);
+        //再判断该用户是否已经收藏过了
+        try (Connection conn1 = dataSource.getConnection();
+             PreparedStatement statement1 = statements.prepare(conn1, SqlStatement.VIDEO_FAVORITE)) {
+            statement1.setLong(1, principal.getMid());
+            statement1.setString(2, bv);
+            try (ResultSet resultSet1 = statement1.executeQuery()) {
+                if (resultSet1.next()) {
+                    //如果收藏过了，则取消收藏
+                    try (Connection conn2 = dataSource.getConnection();
+                         PreparedStatement statement2 = statements.prepare(conn2, SqlStatement.DELETE_VIDEO_FAVORITE)) {
+                        statement2.setLong(1, principal.getMid());
+                        statement2.setString(2, bv);
+                        statement2.executeUpdate();
+                        return false;
+                    }
+                } else {
+                    //如果没收藏过，则收藏
+                    try (Connection conn3 = dataSource.getConnection();
+                         PreparedStatement statement3 = statements.prepare(conn3, SqlStatement.INSERT_VIDEO_FAVORITE)) {
+                        statement3.setLong(1, principal.getMid());
+                        statement3.setString(2, bv);
+                        statement3.executeUpdate();
+                        return true;
+                    }
                 }
             }
         } catch (SQLException e) {
+            log.error("Failed to collect video", e);
         }
-        //先判断该用户能否搜索到这个视频
-        if(searchVideo(auth, bv, videonum,1).contains(bv))
+        return false;
+    }
+
+    /**
+     * Whether the user may coin, like or collect the video: it can search the video and does not own it.
+     * Unreviewed or unpublished videos are only visible to superusers and their owners.
+     */
+    private boolean canInteract(AuthPrincipal principal, String bv)
+    {
+        if (!principal.isValid())
         {
-            //再判断该用户是否是这个视频的主人，如果是主人则不能收藏
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement statement = conn.prepareStatement(
-                         "SELECT OwnerID FROM Video_base WHERE BvID = ?"
-                 )) {
-                statement.setString(1, bv);
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet.next()) {
-                        if (resultSet.getLong("OwnerID") != auth.getMid()) {
-                            //再判断该用户是否已经收藏过了
-                            try (Connection conn1 = dataSource.getConnection();
-                                 PreparedStatement statement1 = conn1.prepareStatement(
-                                         "SELECT * FROM video_favorite WHERE UserID = ? AND BvID = ?"
-                                 )) {
-                                statement1.setLong(1, auth.getMid());
-                                statement1.setString(2, bv);
-                                try (ResultSet resultSet1 = statement1.executeQuery()) {
-                                    if (resultSet1.next()) {
-                                        //如果收藏过了，则取消收藏
-                                        try (Connection conn2 = dataSource.getConnection();
-                                             PreparedStatement statement2 = conn2.prepareStatement(
-                                                     "DELETE FROM video_favorite WHERE UserID = ? AND BvID = ?"
-                                             )) {
-                                            statement2.setLong(1, auth.getMid());
-                                            statement2.setString(2, bv);
-                                            statement2.executeUpdate();
-                                            return false;
-                                        }
-                                    } else {
-                                        //如果没收藏过，则收藏
-                                        try (Connection conn3 = dataSource.getConnection();
-                                             PreparedStatement statement3 = conn3.prepareStatement(
-                                                     "INSERT INTO video_favorite (UserID, BvID) VALUES (?, ?)"
-                                             )) {
-                                            statement3.setLong(1, auth.getMid());
-                                            statement3.setString(2, bv);
-                                            statement3.executeUpdate();
-                                            return true;
-                                        }
-                                    }
-                                }
-                            } catch (SQLException e) {
-                                log.error("Failed to collect video", e);
-                            }
-                        }
-                    }
-                }
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+            return false;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement statement = statements.prepare(conn, SqlStatement.VIDEO_VISIBILITY)) {
+            statement.setString(1, bv);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getLong("OwnerID") != principal.getMid()
+                        && (principal.isSuperuser() || resultSet.getBoolean("Published"));
             }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
-        return false;
     }
 }
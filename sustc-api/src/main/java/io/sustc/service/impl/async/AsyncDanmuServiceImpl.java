@@ -0,0 +1,35 @@
+package io.sustc.service.impl.async;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.AsyncDanmuService;
+import io.sustc.service.DanmuService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class AsyncDanmuServiceImpl implements AsyncDanmuService {
+
+    @Autowired
+    private DanmuService danmuService;
+
+    @Autowired
+    private ServiceExecutor serviceExecutor;
+
+    @Override
+    public CompletableFuture<Long> sendDanmuAsync(AuthInfo auth, String bv, String content, float time) {
+        return serviceExecutor.submit(() -> danmuService.sendDanmu(auth, bv, content, time));
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> displayDanmuAsync(String bv, float timeStart, float timeEnd, boolean filter) {
+        return serviceExecutor.submit(() -> danmuService.displayDanmu(bv, timeStart, timeEnd, filter));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> likeDanmuAsync(AuthInfo auth, long id) {
+        return serviceExecutor.submit(() -> danmuService.likeDanmu(auth, id));
+    }
+}
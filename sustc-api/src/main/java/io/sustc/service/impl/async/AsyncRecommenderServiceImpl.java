@@ -0,0 +1,40 @@
+package io.sustc.service.impl.async;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.AsyncRecommenderService;
+import io.sustc.service.RecommenderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class AsyncRecommenderServiceImpl implements AsyncRecommenderService {
+
+    @Autowired
+    private RecommenderService recommenderService;
+
+    @Autowired
+    private ServiceExecutor serviceExecutor;
+
+    @Override
+    public CompletableFuture<List<String>> recommendNextVideoAsync(String bv) {
+        return serviceExecutor.submit(() -> recommenderService.recommendNextVideo(bv));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> generalRecommendationsAsync(int pageSize, int pageNum) {
+        return serviceExecutor.submit(() -> recommenderService.generalRecommendations(pageSize, pageNum));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> recommendVideosForUserAsync(AuthInfo auth, int pageSize, int pageNum) {
+        return serviceExecutor.submit(() -> recommenderService.recommendVideosForUser(auth, pageSize, pageNum));
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> recommendFriendsAsync(AuthInfo auth, int pageSize, int pageNum) {
+        return serviceExecutor.submit(() -> recommenderService.recommendFriends(auth, pageSize, pageNum));
+    }
+}
@@ -0,0 +1,55 @@
+package io.sustc.service.impl.async;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.RegisterUserReq;
+import io.sustc.dto.UserInfoResp;
+import io.sustc.service.AsyncUserService;
+import io.sustc.service.UserService;
+import io.sustc.service.impl.auth.Authenticator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class AsyncUserServiceImpl implements AsyncUserService {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private Authenticator authenticator;
+
+    @Autowired
+    private ServiceExecutor serviceExecutor;
+
+    @Override
+    public CompletableFuture<Long> registerAsync(RegisterUserReq req) {
+        return serviceExecutor.submit(() -> userService.register(req));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAccountAsync(AuthInfo auth, long mid) {
+        return serviceExecutor.submit(() -> userService.deleteAccount(auth, mid));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> followAsync(AuthInfo auth, long followeeMid) {
+        return serviceExecutor.submit(() -> userService.follow(auth, followeeMid));
+    }
+
+    @Override
+    public CompletableFuture<String> loginAsync(AuthInfo auth) {
+        return serviceExecutor.submit(() -> authenticator.login(auth));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> logoutAsync(String token) {
+        return serviceExecutor.submit(() -> authenticator.logout(token));
+    }
+
+    @Override
+    public CompletableFuture<UserInfoResp> getUserInfoAsync(long mid) {
+        return serviceExecutor.submit(() -> userService.getUserInfo(mid));
+    }
+}
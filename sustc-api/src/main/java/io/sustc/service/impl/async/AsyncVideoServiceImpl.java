@@ -0,0 +1,72 @@
+package io.sustc.service.impl.async;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.PostVideoReq;
+import io.sustc.service.AsyncVideoService;
+import io.sustc.service.VideoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class AsyncVideoServiceImpl implements AsyncVideoService {
+
+    @Autowired
+    private VideoService videoService;
+
+    @Autowired
+    private ServiceExecutor serviceExecutor;
+
+    @Override
+    public CompletableFuture<String> postVideoAsync(AuthInfo auth, PostVideoReq req) {
+        return serviceExecutor.submit(() -> videoService.postVideo(auth, req));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVideoAsync(AuthInfo auth, String bv) {
+        return serviceExecutor.submit(() -> videoService.deleteVideo(auth, bv));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVideoInfoAsync(AuthInfo auth, String bv, PostVideoReq req) {
+        return serviceExecutor.submit(() -> videoService.updateVideoInfo(auth, bv, req));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> searchVideoAsync(AuthInfo auth, String keywords, int pageSize, int pageNum) {
+        return serviceExecutor.submit(() -> videoService.searchVideo(auth, keywords, pageSize, pageNum));
+    }
+
+    @Override
+    public CompletableFuture<Double> getAverageViewRateAsync(String bv) {
+        return serviceExecutor.submit(() -> videoService.getAverageViewRate(bv));
+    }
+
+    @Override
+    public CompletableFuture<Set<Integer>> getHotspotAsync(String bv) {
+        return serviceExecutor.submit(() -> videoService.getHotspot(bv));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> reviewVideoAsync(AuthInfo auth, String bv) {
+        return serviceExecutor.submit(() -> videoService.reviewVideo(auth, bv));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> coinVideoAsync(AuthInfo auth, String bv) {
+        return serviceExecutor.submit(() -> videoService.coinVideo(auth, bv));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> likeVideoAsync(AuthInfo auth, String bv) {
+        return serviceExecutor.submit(() -> videoService.likeVideo(auth, bv));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> collectVideoAsync(AuthInfo auth, String bv) {
+        return serviceExecutor.submit(() -> videoService.collectVideo(auth, bv));
+    }
+}
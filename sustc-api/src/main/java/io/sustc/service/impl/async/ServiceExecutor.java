@@ -0,0 +1,96 @@
+package io.sustc.service.impl.async;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking service calls behind the {@code Async*Service} counterparts.
+ * <p>
+ * At most as many calls run at once as the primary pool has connections, as each call holds one connection
+ * for its whole duration; further calls wait for their turn here instead of queueing in the pool,
+ * where they would count against the pool's connection timeout.
+ * <p>
+ * When the JVM provides virtual threads (Java 21, or 19 and 20 with preview features), each call gets its own,
+ * and waits for a permit on it. Otherwise the calls run on a fixed pool of as many platform threads
+ * and wait in its queue, so a burst of calls does not start a thread each.
+ * The virtual thread executor is looked up reflectively, so the module still builds and runs on Java 8.
+ */
+@Component
+@Slf4j
+public class ServiceExecutor implements DisposableBean {
+
+    private final ExecutorService executor;
+
+    /**
+     * Bounds the calls on virtual threads, null for the fixed pool, which bounds them itself.
+     */
+    private final Semaphore permits;
+
+    @Autowired
+    public ServiceExecutor(HikariDataSource hikariDataSource) {
+        int concurrency = hikariDataSource.getMaximumPoolSize();
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            log.info("Running asynchronous service calls on virtual threads");
+            this.executor = virtualThreads;
+            this.permits = new Semaphore(concurrency);
+        } else {
+            log.info("Virtual threads are not available, running asynchronous service calls on {} pooled threads", concurrency);
+            this.executor = newThreadPool(concurrency);
+            this.permits = null;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (permits == null) {
+            return CompletableFuture.supplyAsync(call, executor);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newThreadPool(int threads) {
+        AtomicInteger created = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "service-async-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // idle threads end after a minute, so the pool holds none while no calls come in
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
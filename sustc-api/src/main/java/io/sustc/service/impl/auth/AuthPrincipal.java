@@ -0,0 +1,36 @@
+package io.sustc.service.impl.auth;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The user behind an {@link io.sustc.dto.AuthInfo}, resolved once at the start of a service call
+ * by {@link Authenticator#resolve(io.sustc.dto.AuthInfo)} and then used for every authorization check of that call.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AuthPrincipal {
+
+    static final AuthPrincipal INVALID = new AuthPrincipal(-1, null, false);
+
+    private final long mid;
+
+    /**
+     * The user's identity, {@code USER} or {@code SUPERUSER}.
+     */
+    private final String identity;
+
+    /**
+     * Whether the credentials or token were accepted; nothing else is meaningful otherwise.
+     */
+    private final boolean valid;
+
+    static AuthPrincipal of(long mid, String identity) {
+        return new AuthPrincipal(mid, identity, true);
+    }
+
+    public boolean isSuperuser() {
+        return valid && "SUPERUSER".equals(identity);
+    }
+}
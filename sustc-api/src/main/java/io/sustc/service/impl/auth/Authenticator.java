@@ -0,0 +1,382 @@
+package io.sustc.service.impl.auth;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.impl.jdbc.ReadWriteRoutingDataSource;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+/**
+ * Checks {@link AuthInfo} for all services, with the credentials of recently seen users cached in memory.
+ * <p>
+ * A user's password digest, QQ, WeChat and identity are loaded with one query on the first check
+ * and kept in a bounded LRU map, so repeated checks of the same user need no database round trip.
+ * Only users that exist are cached. Entries are dropped when a user is registered or deleted,
+ * and the whole cache is cleared whenever the tables are truncated or bulk loaded.
+ * Each check also has a non-blocking variant, which loads the users that are not cached through a given loader.
+ * <p>
+ * A user may also exchange its credentials for a session token with {@link #login(AuthInfo)}.
+ * Tokens are checked against a {@link ConcurrentHashMap} without locking or querying the database,
+ * expire 30 minutes after login, and are revoked when the user is deleted.
+ */
+@Component
+public class Authenticator {
+
+    private static final int MAX_ENTRIES = 1 << 17;
+
+    private static final long SESSION_TTL_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    /**
+     * Expired sessions are swept after this many logins, and otherwise dropped when they are next used.
+     */
+    private static final int SWEEP_INTERVAL = 1024;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * The primary pool, bypassing the routing of read-only transactions to the replica.
+     */
+    @Autowired
+    private HikariDataSource hikariDataSource;
+
+    @Autowired
+    private ReadWriteRoutingDataSource readWriteRoutingDataSource;
+
+    @Autowired
+    private StatementCatalog statements;
+
+    private final Map<Long, Credential> cache = new LinkedHashMap<Long, Credential>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Credential> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Bumped by every invalidation, so a load that raced with one is not cached.
+     */
+    private long generation;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger loginsSinceSweep = new AtomicInteger();
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Resolves the user of {@code auth} with at most one query, which is skipped when the user is cached.
+     * {@code auth} is accepted if it carries a live session token of its {@code mid}, or else the password of its {@code mid}
+     * and, when given, the {@code qq} and {@code wechat} of the same user.
+     *
+     * @return the resolved user, or an invalid principal if {@code auth} is not accepted
+     */
+    public AuthPrincipal resolve(AuthInfo auth) {
+        if (!isWellFormed(auth)) {
+            return AuthPrincipal.INVALID;
+        }
+        return check(auth, credential(auth.getMid()));
+    }
+
+    /**
+     * Resolves the user of {@code auth} like {@link #resolve(AuthInfo)} without blocking the caller,
+     * a user that is not cached is loaded by {@code loader} instead of a query on the {@link DataSource}.
+     *
+     * @param loader loads the credential of a user, completing with null if the user does not exist
+     */
+    public CompletionStage<AuthPrincipal> resolve(AuthInfo auth, LongFunction<CompletionStage<Credential>> loader) {
+        if (!isWellFormed(auth)) {
+            return CompletableFuture.completedFuture(AuthPrincipal.INVALID);
+        }
+        return credential(auth.getMid(), loader).thenApply(credential -> check(auth, credential));
+    }
+
+    /**
+     * Whether {@code auth} is worth looking up, it carries a live session token of its {@code mid} or a password.
+     */
+    private boolean isWellFormed(AuthInfo auth) {
+        if (auth == null || auth.getMid() < 0) {
+            return false;
+        }
+        if (auth.getToken() != null) {
+            return isValidSession(auth.getToken(), auth.getMid());
+        }
+        return auth.getPassword() != null && !auth.getPassword().isEmpty();
+    }
+
+    private static AuthPrincipal check(AuthInfo auth, Credential credential) {
+        if (credential == null) {
+            return AuthPrincipal.INVALID;
+        }
+        if (auth.getToken() == null) {
+            if (!MessageDigest.isEqual(credential.passwordDigest, digest(auth.getPassword()))) {
+                return AuthPrincipal.INVALID;
+            }
+            if (auth.getQq() != null && !auth.getQq().isEmpty() && !auth.getQq().equals(credential.qq)) {
+                return AuthPrincipal.INVALID;
+            }
+            if (auth.getWechat() != null && !auth.getWechat().isEmpty() && !auth.getWechat().equals(credential.wechat)) {
+                return AuthPrincipal.INVALID;
+            }
+        }
+        return AuthPrincipal.of(auth.getMid(), credential.identity);
+    }
+
+    public boolean isValid(AuthInfo auth) {
+        return resolve(auth).isValid();
+    }
+
+    /**
+     * Starts a session for the user of {@code auth}, which must carry credentials rather than a token.
+     *
+     * @return the session token, or null if the credentials are invalid
+     */
+    public String login(AuthInfo auth) {
+        if (auth == null || auth.getToken() != null || !isValid(auth)) {
+            return null;
+        }
+        return startSession(auth.getMid());
+    }
+
+    /**
+     * Starts a session like {@link #login(AuthInfo)} without blocking the caller.
+     *
+     * @param loader loads the credential of a user, as for {@link #resolve(AuthInfo, LongFunction)}
+     */
+    public CompletionStage<String> login(AuthInfo auth, LongFunction<CompletionStage<Credential>> loader) {
+        if (auth == null || auth.getToken() != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return resolve(auth, loader).thenApply(principal -> principal.isValid() ? startSession(auth.getMid()) : null);
+    }
+
+    private String startSession(long mid) {
+        if (loginsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+            loginsSinceSweep.set(0);
+            long now = System.nanoTime();
+            sessions.values().removeIf(session -> session.isExpired(now));
+        }
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(mid, System.nanoTime() + SESSION_TTL_NANOS));
+        return token;
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @return whether the session existed and had not expired
+     */
+    public boolean logout(String token) {
+        Session session = token == null ? null : sessions.remove(token);
+        return session != null && !session.isExpired(System.nanoTime());
+    }
+
+    /**
+     * Ends every session of a user, e.g. after deleting it.
+     */
+    public void revokeSessions(long mid) {
+        sessions.values().removeIf(session -> session.mid == mid);
+    }
+
+    private boolean isValidSession(String token, long mid) {
+        Session session = sessions.get(token);
+        if (session == null || session.mid != mid) {
+            return false;
+        }
+        if (session.isExpired(System.nanoTime())) {
+            sessions.remove(token, session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the identity of a user, such as {@code USER} or {@code SUPERUSER}, or null if the user does not exist.
+     */
+    public String identity(long mid) {
+        Credential credential = credential(mid);
+        return credential == null ? null : credential.identity;
+    }
+
+    /**
+     * Returns the identity of a user like {@link #identity(long)} without blocking the caller.
+     *
+     * @param loader loads the credential of a user, as for {@link #resolve(AuthInfo, LongFunction)}
+     */
+    public CompletionStage<String> identity(long mid, LongFunction<CompletionStage<Credential>> loader) {
+        return credential(mid, loader).thenApply(credential -> credential == null ? null : credential.identity);
+    }
+
+    /**
+     * Forgets a user whose credentials have changed, e.g. after registering or deleting it.
+     * Inside a transaction the user is forgotten again once it completes,
+     * as other calls may load and cache the committed row until then.
+     */
+    public void invalidate(long mid) {
+        evict(mid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(mid);
+                }
+            });
+        }
+    }
+
+    private void evict(long mid) {
+        synchronized (cache) {
+            cache.remove(mid);
+            generation++;
+        }
+    }
+
+    /**
+     * Forgets all users and ends all sessions, e.g. after the tables are truncated or imported.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            generation++;
+        }
+        sessions.clear();
+    }
+
+    private Credential credential(long mid) {
+        long loadGeneration;
+        synchronized (cache) {
+            Credential credential = cache.get(mid);
+            if (credential != null) {
+                return credential;
+            }
+            loadGeneration = generation;
+        }
+        Credential credential = load(mid);
+        store(mid, credential, loadGeneration);
+        return credential;
+    }
+
+    private CompletionStage<Credential> credential(long mid, LongFunction<CompletionStage<Credential>> loader) {
+        long loadGeneration;
+        synchronized (cache) {
+            Credential credential = cache.get(mid);
+            if (credential != null) {
+                return CompletableFuture.completedFuture(credential);
+            }
+            loadGeneration = generation;
+        }
+        return loader.apply(mid).thenApply(credential -> {
+            store(mid, credential, loadGeneration);
+            return credential;
+        });
+    }
+
+    private void store(long mid, Credential credential, long loadGeneration) {
+        if (credential != null) {
+            synchronized (cache) {
+                if (generation == loadGeneration) {
+                    cache.put(mid, credential);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a credential from the primary, as a lagging replica may still return a user deleted moments ago,
+     * who would then stay cached after the deletion evicted it.
+     * A read-only transaction that may run on the replica thus borrows a primary connection of its own for the lookup.
+     */
+    private Credential load(long mid) {
+        DataSource source = readWriteRoutingDataSource.mayUseReplica() ? hikariDataSource : dataSource;
+        try (Connection conn = source.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.USER_CREDENTIAL)) {
+            stmt.setLong(1, mid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return Credential.of(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] digest(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Session {
+
+        private final long mid;
+
+        private final long expiresAt;
+
+        Session(long mid, long expiresAt) {
+            this.mid = mid;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * What is kept of a user, the password only as a SHA-256 digest.
+     */
+    public static class Credential {
+
+        private final byte[] passwordDigest;
+
+        private final String qq;
+
+        private final String wechat;
+
+        private final String identity;
+
+        private Credential(byte[] passwordDigest, String qq, String wechat, String identity) {
+            this.passwordDigest = passwordDigest;
+            this.qq = qq;
+            this.wechat = wechat;
+            this.identity = identity;
+        }
+
+        /**
+         * Takes the columns of {@link SqlStatement#USER_CREDENTIAL} in order.
+         */
+        public static Credential of(String password, String qq, String wechat, String identity) {
+            return new Credential(digest(Objects.toString(password, "")), qq, wechat, identity);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.sustc.service.impl.coalesce;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read-only service method whose concurrent calls with equal arguments share one execution,
+ * see {@link RequestCoalescer}.
+ * The method must not modify anything, and its arguments must implement {@code equals} by value.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Coalesced {
+}
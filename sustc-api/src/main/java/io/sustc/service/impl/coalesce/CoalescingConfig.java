@@ -0,0 +1,31 @@
+package io.sustc.service.impl.coalesce;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+/**
+ * Applies the {@link RequestCoalescer} to the {@link Coalesced} methods of the services.
+ * <p>
+ * The advisor is an infrastructure bean like the one behind {@code @Transactional}, so it is applied by the same
+ * auto-proxy creator without AspectJ on the classpath. It is ordered first, so the calls that wait for an identical one
+ * do so before a transaction is begun for them.
+ */
+@Configuration
+@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+public class CoalescingConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public Advisor coalescingAdvisor(RequestCoalescer requestCoalescer) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(Coalesced.class), requestCoalescer);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
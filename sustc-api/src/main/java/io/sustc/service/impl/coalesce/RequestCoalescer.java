@@ -0,0 +1,112 @@
+package io.sustc.service.impl.coalesce;
+
+import io.sustc.dto.CoalescingStats;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets concurrent calls of a {@link Coalesced} method with equal arguments share one execution.
+ * <p>
+ * The first call runs the method, and calls arriving while it runs wait for it and return its result,
+ * or throw what it threw, without opening a transaction or querying the database themselves.
+ * A call arriving after the first one returned runs the method again, so a result is never served from
+ * an execution that had finished before the call was made; it may still miss a write committed while
+ * the shared execution ran, as it would had the call run a little earlier.
+ * <p>
+ * Each caller gets its own copy of a returned list or set.
+ * It runs in front of the transaction of the method, see {@link CoalescingConfig}.
+ */
+@Component
+public class RequestCoalescer implements MethodInterceptor {
+
+    private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<Method, Counter> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Counter counter = counters.computeIfAbsent(invocation.getMethod(), method -> new Counter(
+                ClassUtils.getUserClass(invocation.getThis()).getSimpleName() + "." + method.getName()));
+        counter.calls.increment();
+        List<Object> key = new ArrayList<>(invocation.getArguments().length + 1);
+        key.add(invocation.getMethod());
+        key.addAll(Arrays.asList(invocation.getArguments()));
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            counter.coalesced.increment();
+            try {
+                return copy(running.join());
+            } catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        // no call joins once the flight is removed, so its waiters are final when it completes
+        inFlight.remove(key, flight);
+        flight.complete(copy(result));
+        return result;
+    }
+
+    /**
+     * @return the coalescing of each method called since startup, by method name
+     */
+    public List<CoalescingStats> getStats() {
+        List<CoalescingStats> stats = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            stats.add(CoalescingStats.builder()
+                    .method(counter.name)
+                    .calls(counter.calls.sum())
+                    .coalesced(counter.coalesced.sum())
+                    .build());
+        }
+        stats.sort(Comparator.comparing(CoalescingStats::getMethod));
+        return stats;
+    }
+
+    private static Object copy(Object result) {
+        if (result instanceof List) {
+            return new ArrayList<>((List<?>) result);
+        }
+        if (result instanceof Set) {
+            return new HashSet<>((Set<?>) result);
+        }
+        return result;
+    }
+
+    private static class Counter {
+
+        private final String name;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder coalesced = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.sustc.service.impl.importer;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.TimeZone;
+
+/**
+ * Writes rows in the binary format of {@code COPY ... FROM STDIN WITH (FORMAT binary)}.
+ * <p>
+ * Values are encoded straight into one reusable buffer, so numbers and timestamps are never formatted as text
+ * and no objects are allocated per row. The column types must match the target table exactly:
+ * {@code bigint} for ids and mids, {@code smallint} for the level, {@code integer} for coins,
+ * {@code real} for durations and display times, {@code timestamp} for times and {@code text}/{@code varchar} otherwise.
+ * <p>
+ * Reference: <a href="https://www.postgresql.org/docs/current/sql-copy.html#id-1.9.3.55.9.4">COPY binary format</a>
+ */
+public class BinaryCopyWriter implements AutoCloseable {
+
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+
+    private static final byte[] HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Microseconds between the Unix epoch and the PostgreSQL epoch, 2000-01-01 00:00:00.
+     */
+    private static final long POSTGRES_EPOCH_MICROS = 946_684_800_000_000L;
+
+    private final CopyIn copyIn;
+
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(FLUSH_THRESHOLD + (FLUSH_THRESHOLD >> 2));
+
+    public BinaryCopyWriter(CopyManager copyManager, String sql) throws SQLException {
+        this.copyIn = copyManager.copyIn(sql);
+        buffer.put(HEADER);
+    }
+
+    public BinaryCopyWriter startRow(int columns) {
+        ensureCapacity(2);
+        buffer.putShort((short) columns);
+        return this;
+    }
+
+    public BinaryCopyWriter int8(long value) {
+        ensureCapacity(12);
+        buffer.putInt(8).putLong(value);
+        return this;
+    }
+
+    public BinaryCopyWriter int8(Long value) {
+        if (value == null) {
+            return nullValue();
+        }
+        return int8(value.longValue());
+    }
+
+    public BinaryCopyWriter int4(int value) {
+        ensureCapacity(8);
+        buffer.putInt(4).putInt(value);
+        return this;
+    }
+
+    public BinaryCopyWriter int2(short value) {
+        ensureCapacity(6);
+        buffer.putInt(2).putShort(value);
+        return this;
+    }
+
+    public BinaryCopyWriter float4(float value) {
+        ensureCapacity(8);
+        buffer.putInt(4).putFloat(value);
+        return this;
+    }
+
+    /**
+     * Writes a {@code timestamp without time zone} holding the same wall-clock time as {@link Timestamp#toString()},
+     * which is what the text format sends.
+     */
+    public BinaryCopyWriter timestamp(Timestamp value) {
+        if (value == null) {
+            return nullValue();
+        }
+        long millis = value.getTime();
+        long localSeconds = Math.floorDiv(millis + timeZone.getOffset(millis), 1000);
+        long micros = localSeconds * 1_000_000 + value.getNanos() / 1000;
+        ensureCapacity(12);
+        buffer.putInt(8).putLong(micros - POSTGRES_EPOCH_MICROS);
+        return this;
+    }
+
+    /**
+     * Writes a string as UTF-8 without going through an intermediate {@code byte[]}.
+     */
+    public BinaryCopyWriter text(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        int length = value.length();
+        ensureCapacity(4 + 3 * length);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6))
+                        .put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xf0 | codePoint >> 18))
+                        .put((byte) (0x80 | codePoint >> 12 & 0x3f))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3f))
+                        .put((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate is not valid UTF-8, replace it like String.getBytes does
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12))
+                        .put((byte) (0x80 | c >> 6 & 0x3f))
+                        .put((byte) (0x80 | c & 0x3f));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+        return this;
+    }
+
+    public BinaryCopyWriter nullValue() {
+        ensureCapacity(4);
+        buffer.putInt(-1);
+        return this;
+    }
+
+    public void endRow() throws SQLException {
+        if (buffer.position() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the remaining rows with the file trailer and completes the copy.
+     *
+     * @return the number of rows the server has written
+     */
+    public long finish() throws SQLException {
+        ensureCapacity(2);
+        buffer.putShort((short) -1);
+        flush();
+        return copyIn.endCopy();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    /**
+     * Makes room for a value of up to {@code bytes} bytes. Rows are normally flushed by {@link #endRow()},
+     * so this only flushes mid-row after unusually long strings, or grows the buffer for them.
+     */
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        try {
+            flush();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        if (buffer.remaining() < bytes) {
+            buffer = ByteBuffer.allocate(bytes + FLUSH_THRESHOLD);
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+}
@@ -0,0 +1,302 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the import records through PostgreSQL's {@code COPY ... FROM STDIN}.
+ * Each table is streamed on its own connection within a single {@code COPY} command.
+ */
+@Component
+@Slf4j
+public class CopyImporter {
+
+    static final String USER_COPY_SQL = "COPY User_base (UserID, Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) FROM STDIN";
+
+    static final String VIDEO_COPY_SQL = "COPY Video_base (BvID, Title, OwnerID, OwnerName, CommitTime, ReviewTime, PublicTime, " +
+            "Duration, Description, Reviewer) FROM STDIN";
+
+    static final String DANMU_COPY_SQL = "COPY Danmu_base (DanmuID, BvID, UserID, DisplayTime, Content, PostTime) FROM STDIN";
+
+    static final String USER_BINARY_COPY_SQL = USER_COPY_SQL + " WITH (FORMAT binary)";
+
+    static final String VIDEO_BINARY_COPY_SQL = VIDEO_COPY_SQL + " WITH (FORMAT binary)";
+
+    static final String DANMU_BINARY_COPY_SQL = DANMU_COPY_SQL + " WITH (FORMAT binary)";
+
+    static final String DANMU_SEQUENCE_SQL = "SELECT setval(pg_get_serial_sequence('danmu_base', 'danmuid'), ?)";
+
+    @Autowired
+    private DataSource dataSource;
+
+    public void importUsers(List<UserRecord> userRecords) {
+        copy("User_base", USER_COPY_SQL, writer -> {
+            for (UserRecord userRecord : userRecords) {
+                writeUser(writer, userRecord);
+            }
+        });
+    }
+
+    public void importVideos(List<VideoRecord> videoRecords) {
+        copy("Video_base", VIDEO_COPY_SQL, writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                writeVideo(writer, videoRecord);
+            }
+        });
+    }
+
+    /**
+     * Copies the danmus with {@code DanmuID} assigned as their 1-based position in {@code danmuRecords},
+     * so that {@code Danmu_liked} can reference them without reading the generated ids back.
+     */
+    public void importDanmus(List<DanmuRecord> danmuRecords) {
+        copy("Danmu_base", DANMU_COPY_SQL, writer -> writeDanmus(writer, danmuRecords, 0));
+        syncDanmuSequence(danmuRecords.size());
+    }
+
+    /**
+     * Moves the {@code DanmuID} sequence past the explicitly assigned ids,
+     * so danmus sent after the import do not collide with imported ones.
+     */
+    public void syncDanmuSequence(long lastDanmuId) {
+        if (lastDanmuId <= 0) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(DANMU_SEQUENCE_SQL)) {
+            stmt.setLong(1, lastDanmuId);
+            stmt.execute();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs one {@code COPY} on a fresh connection and logs its throughput.
+     *
+     * @param table the table name used in the report
+     * @param sql   the {@code COPY ... FROM STDIN} statement
+     * @param rows  writes the rows of the table
+     * @return the number of copied rows
+     */
+    public long copy(String table, String sql, RowSource rows) {
+        long startedTime = System.nanoTime();
+        long count = copyChunk(sql, rows);
+        report(table, count, System.nanoTime() - startedTime);
+        return count;
+    }
+
+    /**
+     * Runs one {@code COPY} on a fresh connection without reporting it,
+     * for callers that aggregate the throughput of several chunks themselves.
+     */
+    long copyChunk(String sql, RowSource rows) {
+        return copyChunk(sql, rows, null);
+    }
+
+    /**
+     * Runs one {@code COPY} on a fresh connection without reporting it.
+     *
+     * @param beforeCommit if not null, the copy runs in a transaction and this is called on the same connection
+     *                     before it commits
+     */
+    long copyChunk(String sql, RowSource rows, CommitHook beforeCommit) {
+        return inTransaction(beforeCommit, conn -> copy(conn, sql, rows));
+    }
+
+    /**
+     * Runs one {@code COPY} on {@code conn}, within whatever transaction is open on it.
+     */
+    static long copy(Connection conn, String sql, RowSource rows) throws SQLException {
+        try (CopyRowWriter writer = new CopyRowWriter(copyManager(conn), sql)) {
+            rows.writeTo(writer);
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Runs one binary {@code COPY} on a fresh connection without reporting it.
+     *
+     * @param beforeCommit as in {@link #copyChunk(String, RowSource, CommitHook)}
+     */
+    long copyBinaryChunk(String sql, BinaryRowSource rows, CommitHook beforeCommit) {
+        return inTransaction(beforeCommit, conn -> {
+            try (BinaryCopyWriter writer = new BinaryCopyWriter(copyManager(conn), sql)) {
+                rows.writeTo(writer);
+                return writer.finish();
+            }
+        });
+    }
+
+    private long inTransaction(CommitHook beforeCommit, ConnectionCopy copy) {
+        try (Connection conn = dataSource.getConnection()) {
+            if (beforeCommit == null) {
+                return copy.copy(conn);
+            }
+            conn.setAutoCommit(false);
+            try {
+                long count = copy.copy(conn);
+                beforeCommit.run(conn, count);
+                conn.commit();
+                return count;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void report(String table, long rows, long elapsedNanos) {
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        log.info("Copied {} rows into {} in {} ms ({} rows/s)", rows, table, millis, rows * 1000 / millis);
+    }
+
+    static long danmuId(int index) {
+        return index + 1L;
+    }
+
+    static void writeUser(CopyRowWriter writer, UserRecord userRecord) throws SQLException {
+        writer.number(userRecord.getMid())
+                .text(userRecord.getName())
+                .text(userRecord.getSex())
+                .text(userRecord.getBirthday())
+                .number(userRecord.getLevel())
+                .number(userRecord.getCoin())
+                .text(userRecord.getSign())
+                .text(userRecord.getIdentity().name())
+                .text(userRecord.getPassword())
+                .text(userRecord.getQq())
+                .text(userRecord.getWechat())
+                .endRow();
+    }
+
+    static void writeVideo(CopyRowWriter writer, VideoRecord videoRecord) throws SQLException {
+        writer.text(videoRecord.getBv())
+                .text(videoRecord.getTitle())
+                .number(videoRecord.getOwnerMid())
+                .text(videoRecord.getOwnerName())
+                .timestamp(videoRecord.getCommitTime())
+                .timestamp(videoRecord.getReviewTime())
+                .timestamp(videoRecord.getPublicTime())
+                .number(videoRecord.getDuration())
+                .text(videoRecord.getDescription())
+                .number(videoRecord.getReviewer())
+                .endRow();
+    }
+
+    /**
+     * Writes a slice of the danmu records, where {@code firstIndex} is the position of the slice
+     * in the full record list and determines the assigned ids.
+     */
+    static void writeDanmus(CopyRowWriter writer, List<DanmuRecord> danmuRecords, int firstIndex) throws SQLException {
+        for (int i = 0; i < danmuRecords.size(); i++) {
+            writeDanmu(writer, danmuId(firstIndex + i), danmuRecords.get(i));
+        }
+    }
+
+    static void writeDanmu(CopyRowWriter writer, long danmuId, DanmuRecord danmuRecord) throws SQLException {
+        writer.number(danmuId)
+                .text(danmuRecord.getBv())
+                .number(danmuRecord.getMid())
+                .number(danmuRecord.getTime())
+                .text(danmuRecord.getContent())
+                .timestamp(danmuRecord.getPostTime())
+                .endRow();
+    }
+
+    static void writeUser(BinaryCopyWriter writer, UserRecord userRecord) throws SQLException {
+        writer.startRow(11)
+                .int8(userRecord.getMid())
+                .text(userRecord.getName())
+                .text(userRecord.getSex())
+                .text(userRecord.getBirthday())
+                .int2(userRecord.getLevel())
+                .int4(userRecord.getCoin())
+                .text(userRecord.getSign())
+                .text(userRecord.getIdentity().name())
+                .text(userRecord.getPassword())
+                .text(userRecord.getQq())
+                .text(userRecord.getWechat())
+                .endRow();
+    }
+
+    static void writeVideo(BinaryCopyWriter writer, VideoRecord videoRecord) throws SQLException {
+        writer.startRow(10)
+                .text(videoRecord.getBv())
+                .text(videoRecord.getTitle())
+                .int8(videoRecord.getOwnerMid())
+                .text(videoRecord.getOwnerName())
+                .timestamp(videoRecord.getCommitTime())
+                .timestamp(videoRecord.getReviewTime())
+                .timestamp(videoRecord.getPublicTime())
+                .float4(videoRecord.getDuration())
+                .text(videoRecord.getDescription())
+                .int8(videoRecord.getReviewer())
+                .endRow();
+    }
+
+    static void writeDanmus(BinaryCopyWriter writer, List<DanmuRecord> danmuRecords, int firstIndex) throws SQLException {
+        for (int i = 0; i < danmuRecords.size(); i++) {
+            writeDanmu(writer, danmuId(firstIndex + i), danmuRecords.get(i));
+        }
+    }
+
+    static void writeDanmu(BinaryCopyWriter writer, long danmuId, DanmuRecord danmuRecord) throws SQLException {
+        writer.startRow(6)
+                .int8(danmuId)
+                .text(danmuRecord.getBv())
+                .int8(danmuRecord.getMid())
+                .float4(danmuRecord.getTime())
+                .text(danmuRecord.getContent())
+                .timestamp(danmuRecord.getPostTime())
+                .endRow();
+    }
+
+    static CopyManager copyManager(Connection conn) throws SQLException {
+        return conn.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    @FunctionalInterface
+    public interface RowSource {
+
+        void writeTo(CopyRowWriter writer) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface BinaryRowSource {
+
+        void writeTo(BinaryCopyWriter writer) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface CommitHook {
+
+        /**
+         * @param rows the number of rows copied in the transaction
+         */
+        void run(Connection conn, long rows) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ConnectionCopy {
+
+        long copy(Connection conn) throws SQLException;
+    }
+}
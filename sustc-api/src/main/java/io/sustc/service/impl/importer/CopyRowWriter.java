@@ -0,0 +1,129 @@
+package io.sustc.service.impl.importer;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Writes rows in the text format of {@code COPY ... FROM STDIN}.
+ * <p>
+ * Rows are buffered and sent to the server in chunks of about {@link #FLUSH_THRESHOLD} characters,
+ * so a whole table is loaded in a single round trip per chunk instead of one per row.
+ * <p>
+ * Reference: <a href="https://www.postgresql.org/docs/current/sql-copy.html#id-1.9.3.55.9.2">COPY text format</a>
+ */
+public class CopyRowWriter implements AutoCloseable {
+
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+
+    private final CopyIn copyIn;
+
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + (FLUSH_THRESHOLD >> 2));
+
+    private boolean rowStart = true;
+
+    public CopyRowWriter(CopyManager copyManager, String sql) throws SQLException {
+        this.copyIn = copyManager.copyIn(sql);
+    }
+
+    public CopyRowWriter text(String value) {
+        separate();
+        if (value == null) {
+            buffer.append("\\N");
+            return this;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+        return this;
+    }
+
+    public CopyRowWriter number(long value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    public CopyRowWriter number(float value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    public CopyRowWriter number(Long value) {
+        if (value == null) {
+            return text(null);
+        }
+        return number(value.longValue());
+    }
+
+    public CopyRowWriter timestamp(Timestamp value) {
+        if (value == null) {
+            return text(null);
+        }
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    public void endRow() throws SQLException {
+        buffer.append('\n');
+        rowStart = true;
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the remaining rows and completes the copy.
+     *
+     * @return the number of rows the server has written
+     */
+    public long finish() throws SQLException {
+        flush();
+        return copyIn.endCopy();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    private void separate() {
+        if (rowStart) {
+            rowStart = false;
+        } else {
+            buffer.append('\t');
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+}
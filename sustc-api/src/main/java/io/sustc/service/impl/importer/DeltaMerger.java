@@ -0,0 +1,235 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges a batch of new or changed records into a populated database without truncating it.
+ * <p>
+ * The batch is copied into {@code TEMP} tables, then merged with one set-based statement per table,
+ * all in a single transaction, so the cost follows the size of the batch rather than of the database:
+ * <ul>
+ *   <li>users and videos are upserted on their keys with {@code INSERT ... ON CONFLICT DO UPDATE}</li>
+ *   <li>a video keeps the owner name of its record, a video of an unknown owner fails the foreign key</li>
+ *   <li>a danmu is matched on all of its columns, null contents included, as danmus have no natural key;
+ *   unmatched danmus get new ids from the {@code DanmuID} sequence</li>
+ *   <li>relation entries are only added, entries missing from the batch are kept</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class DeltaMerger {
+
+    private static final String[] CREATE_SQL = {
+            "CREATE TEMP TABLE delta_user (mid BIGINT, name TEXT, sex TEXT, birthday TEXT, level SMALLINT, " +
+                    "coin INTEGER, sign TEXT, identity TEXT, password TEXT, qq TEXT, wechat TEXT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_video (bv TEXT, title TEXT, owner_mid BIGINT, owner_name TEXT, " +
+                    "commit_time TIMESTAMP, review_time TIMESTAMP, public_time TIMESTAMP, duration REAL, " +
+                    "description TEXT, reviewer BIGINT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_danmu (seq BIGINT, bv TEXT, mid BIGINT, display_time REAL, " +
+                    "content TEXT, post_time TIMESTAMP, danmu_id BIGINT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_follow (upid BIGINT, follower_id BIGINT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_like (mid BIGINT, bv TEXT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_coin (mid BIGINT, bv TEXT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_favorite (mid BIGINT, bv TEXT) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_viewer (mid BIGINT, bv TEXT, time REAL) ON COMMIT DROP",
+            "CREATE TEMP TABLE delta_danmu_like (mid BIGINT, seq BIGINT) ON COMMIT DROP",
+    };
+
+    private static final String ANALYZE_SQL = "ANALYZE delta_user, delta_video, delta_danmu, delta_follow, " +
+            "delta_like, delta_coin, delta_favorite, delta_viewer, delta_danmu_like";
+
+    /**
+     * The searchable fields of the videos the batch replaces, read before the merge.
+     */
+    private static final String REPLACED_VIDEOS_SQL = "SELECT v.OwnerID, v.Title, v.Description, v.OwnerName FROM Video_base v " +
+            "WHERE v.BvID IN (SELECT bv FROM delta_video)";
+
+    private static final String[] MERGE_SQL = {
+            "INSERT INTO User_base (UserID, Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) " +
+                    "SELECT DISTINCT ON (mid) mid, name, sex, birthday, level, coin, sign, identity, password, qq, wechat FROM delta_user " +
+                    "ON CONFLICT (UserID) DO UPDATE SET Name = EXCLUDED.Name, Sex = EXCLUDED.Sex, Birthday = EXCLUDED.Birthday, " +
+                    "Level = EXCLUDED.Level, Coin = EXCLUDED.Coin, Sign = EXCLUDED.Sign, Identity = EXCLUDED.Identity, " +
+                    "Password = EXCLUDED.Password, QQ = EXCLUDED.QQ, WeChat = EXCLUDED.WeChat",
+            "INSERT INTO Video_base (BvID, Title, OwnerID, OwnerName, CommitTime, ReviewTime, PublicTime, Duration, Description, Reviewer) " +
+                    "SELECT DISTINCT ON (bv) bv, title, owner_mid, owner_name, commit_time, review_time, public_time, " +
+                    "duration, description, reviewer FROM delta_video " +
+                    "ON CONFLICT (BvID) DO UPDATE SET Title = EXCLUDED.Title, OwnerID = EXCLUDED.OwnerID, OwnerName = EXCLUDED.OwnerName, " +
+                    "CommitTime = EXCLUDED.CommitTime, ReviewTime = EXCLUDED.ReviewTime, PublicTime = EXCLUDED.PublicTime, " +
+                    "Duration = EXCLUDED.Duration, Description = EXCLUDED.Description, Reviewer = EXCLUDED.Reviewer",
+            "UPDATE delta_danmu d SET danmu_id = b.DanmuID FROM Danmu_base b " +
+                    "WHERE b.BvID = d.bv AND b.UserID = d.mid AND b.PostTime = d.post_time " +
+                    "AND b.DisplayTime = d.display_time AND b.Content IS NOT DISTINCT FROM d.content",
+            "UPDATE delta_danmu SET danmu_id = nextval(pg_get_serial_sequence('danmu_base', 'danmuid')) WHERE danmu_id IS NULL",
+            "INSERT INTO Danmu_base (DanmuID, BvID, UserID, DisplayTime, Content, PostTime) " +
+                    "SELECT danmu_id, bv, mid, display_time, content, post_time FROM delta_danmu d " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM Danmu_base b WHERE b.DanmuID = d.danmu_id)",
+            "INSERT INTO User_follow (upid, followerid) SELECT DISTINCT upid, follower_id FROM delta_follow d " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM User_follow f WHERE f.upid = d.upid AND f.followerid = d.follower_id) " +
+                    "ON CONFLICT DO NOTHING",
+            videoUserMerge("Video_like", "delta_like"),
+            videoUserMerge("Video_coin", "delta_coin"),
+            videoUserMerge("video_favorite", "delta_favorite"),
+            "INSERT INTO Video_viewer (UserID, BvID, Time) SELECT DISTINCT ON (mid, bv) mid, bv, time FROM delta_viewer d " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM Video_viewer t WHERE t.UserID = d.mid AND t.BvID = d.bv) " +
+                    "ON CONFLICT DO NOTHING",
+            "INSERT INTO Danmu_liked (UserID, DanmuID) SELECT DISTINCT l.mid, d.danmu_id " +
+                    "FROM delta_danmu_like l JOIN delta_danmu d ON d.seq = l.seq " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM Danmu_liked t WHERE t.UserID = l.mid AND t.DanmuID = d.danmu_id) " +
+                    "ON CONFLICT DO NOTHING",
+    };
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * @return the users and videos the batch inserted or changed, for the caches to drop
+     */
+    public Merged mergeData(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords
+    ) {
+        long startedTime = System.nanoTime();
+        Merged merged = new Merged();
+        for (UserRecord userRecord : userRecords) {
+            merged.mids.add(userRecord.getMid());
+        }
+        for (VideoRecord videoRecord : videoRecords) {
+            merged.bvs.add(videoRecord.getBv());
+            merged.videoFields.add(new VideoFields(videoRecord.getOwnerMid(), videoRecord.getTitle(),
+                    videoRecord.getDescription(), videoRecord.getOwnerName()));
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : CREATE_SQL) {
+                    stmt.execute(sql);
+                }
+                stage(conn, danmuRecords, userRecords, videoRecords);
+                stmt.execute(ANALYZE_SQL);
+                try (ResultSet rs = stmt.executeQuery(REPLACED_VIDEOS_SQL)) {
+                    while (rs.next()) {
+                        merged.videoFields.add(new VideoFields(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+                    }
+                }
+                for (String sql : MERGE_SQL) {
+                    stmt.executeUpdate(sql);
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Merged {} users, {} videos and {} danmus in {} ms",
+                userRecords.size(), videoRecords.size(), danmuRecords.size(), (System.nanoTime() - startedTime) / 1_000_000);
+        return merged;
+    }
+
+    /**
+     * Copies the batch into the temporary tables. The danmus are numbered by their position in the batch,
+     * which the danmu likes refer to until the danmus have their real ids.
+     */
+    private static void stage(
+            Connection conn,
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords
+    ) throws SQLException {
+        CopyImporter.copy(conn, "COPY delta_user FROM STDIN", writer -> {
+            for (UserRecord userRecord : userRecords) {
+                CopyImporter.writeUser(writer, userRecord);
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_video FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                CopyImporter.writeVideo(writer, videoRecord);
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_danmu (seq, bv, mid, display_time, content, post_time) FROM STDIN",
+                writer -> CopyImporter.writeDanmus(writer, danmuRecords, 0));
+        CopyImporter.copy(conn, "COPY delta_follow FROM STDIN", writer -> {
+            for (UserRecord userRecord : userRecords) {
+                RelationImporter.writeFollows(writer, userRecord);
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_like FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getLike());
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_coin FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getCoin());
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_favorite FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getFavorite());
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_viewer FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeViewers(writer, videoRecord);
+            }
+        });
+        CopyImporter.copy(conn, "COPY delta_danmu_like FROM STDIN",
+                writer -> RelationImporter.writeDanmuLikes(writer, danmuRecords, 0));
+    }
+
+    private static String videoUserMerge(String table, String deltaTable) {
+        return "INSERT INTO " + table + " (UserID, BvID) SELECT DISTINCT mid, bv FROM " + deltaTable + " d " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + table + " t WHERE t.UserID = d.mid AND t.BvID = d.bv) " +
+                "ON CONFLICT DO NOTHING";
+    }
+
+    /**
+     * What a merge inserted or changed.
+     */
+    @Getter
+    public static class Merged {
+
+        private final Set<Long> mids = new LinkedHashSet<>();
+
+        private final Set<String> bvs = new LinkedHashSet<>();
+
+        /**
+         * The searchable fields of the merged videos, both as they were before the merge and as they are now.
+         */
+        private final List<VideoFields> videoFields = new ArrayList<>();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class VideoFields {
+
+        private final long ownerMid;
+
+        private final String title;
+
+        private final String description;
+
+        private final String ownerName;
+    }
+}
@@ -0,0 +1,116 @@
+package io.sustc.service.impl.importer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which chunks of an import have been committed, so a failed import can be resumed.
+ * <p>
+ * A chunk and its checkpoint row are committed in the same transaction, so a chunk is either fully loaded
+ * and recorded, or neither; a resumed import skips the recorded chunks and loads the rest.
+ * Chunks of one table commit out of order when they are loaded in parallel,
+ * so every committed chunk is recorded rather than only the last one.
+ * <p>
+ * Chunks are identified by their position, so a resumed import must read the same records in the same order
+ * with the same chunk size; the chunk size is stored alongside and checked on resume.
+ */
+@Component
+public class ImportCheckpoint {
+
+    private static final String CREATE_SQL = "CREATE TABLE IF NOT EXISTS import_checkpoint (" +
+            "table_name TEXT NOT NULL, " +
+            "batch INTEGER NOT NULL, " +
+            "chunk_size INTEGER NOT NULL, " +
+            "row_count BIGINT NOT NULL, " +
+            "PRIMARY KEY (table_name, batch))";
+
+    private static final String SELECT_SQL = "SELECT table_name, batch, chunk_size FROM import_checkpoint";
+
+    private static final String INSERT_SQL = "INSERT INTO import_checkpoint (table_name, batch, chunk_size, row_count) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Prepares the checkpoints of an import.
+     *
+     * @param chunkSize the number of records per chunk
+     * @param resume    whether to keep the checkpoints of a previous import, otherwise they are cleared
+     * @return the chunks committed so far
+     * @throws IllegalStateException if resuming without checkpoints, or with checkpoints of another chunk size
+     */
+    public Progress begin(int chunkSize, boolean resume) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_SQL);
+            Progress progress = new Progress(chunkSize);
+            if (!resume) {
+                stmt.execute("DELETE FROM import_checkpoint");
+                return progress;
+            }
+            try (ResultSet rs = stmt.executeQuery(SELECT_SQL)) {
+                while (rs.next()) {
+                    if (rs.getInt(3) != chunkSize) {
+                        throw new IllegalStateException("The import was checkpointed with chunk size " + rs.getInt(3) +
+                                ", resume it with the same chunk size instead of " + chunkSize);
+                    }
+                    progress.committed.computeIfAbsent(rs.getString(1), table -> new HashSet<>()).add(rs.getInt(2));
+                }
+            }
+            if (progress.committed.isEmpty()) {
+                // the tables may hold the rows of an import that was not checkpointed, which would be loaded twice
+                throw new IllegalStateException("No import checkpoints found to resume from, " +
+                        "truncate the tables and import without --resume instead");
+            }
+            return progress;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The chunks committed by an import, updated as new chunks commit.
+     */
+    public static class Progress {
+
+        private final int chunkSize;
+
+        private final Map<String, Set<Integer>> committed = new HashMap<>();
+
+        Progress(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Only read before the chunks of {@code table} are submitted, the commits themselves go to the database.
+         */
+        boolean isCommitted(String table, int batch) {
+            Set<Integer> batches = committed.get(table);
+            return batches != null && batches.contains(batch);
+        }
+
+        /**
+         * Records a chunk on {@code conn}, to be committed together with the chunk itself.
+         */
+        void record(Connection conn, String table, int batch, long rows) throws SQLException {
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                stmt.setString(1, table);
+                stmt.setInt(2, batch);
+                stmt.setInt(3, chunkSize);
+                stmt.setLong(4, rows);
+                stmt.executeUpdate();
+            }
+        }
+    }
+}
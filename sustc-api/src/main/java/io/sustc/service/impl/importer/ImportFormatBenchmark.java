@@ -0,0 +1,189 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportFormatTiming;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the write paths of the import on the same sample:
+ * one {@code PreparedStatement} execution per row as in the row-by-row import, text {@code COPY} and binary {@code COPY}.
+ * <p>
+ * Everything runs on one connection against {@code TEMP} tables created {@code LIKE} the base tables,
+ * so the column types are the real ones but there are no indexes or constraints,
+ * and the live tables are left untouched. Each table is truncated before every run.
+ */
+@Component
+@Slf4j
+public class ImportFormatBenchmark {
+
+    private static final String USER_INSERT_SQL = "INSERT INTO bench_user (UserID, Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String VIDEO_INSERT_SQL = "INSERT INTO bench_video (BvID, Title, OwnerID, OwnerName, CommitTime, ReviewTime, PublicTime, " +
+            "Duration, Description, Reviewer) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DANMU_INSERT_SQL = "INSERT INTO bench_danmu (DanmuID, BvID, UserID, DisplayTime, Content, PostTime) VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private DataSource dataSource;
+
+    public List<ImportFormatTiming> run(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords,
+            int iterations
+    ) {
+        List<ImportFormatTiming> timings = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TEMP TABLE IF NOT EXISTS bench_user (LIKE User_base)");
+                stmt.execute("CREATE TEMP TABLE IF NOT EXISTS bench_video (LIKE Video_base)");
+                stmt.execute("CREATE TEMP TABLE IF NOT EXISTS bench_danmu (LIKE Danmu_base)");
+            }
+
+            timings.add(measure(conn, "bench_user", "PreparedStatement", userRecords.size(), iterations, () -> {
+                try (PreparedStatement stmt = conn.prepareStatement(USER_INSERT_SQL)) {
+                    for (UserRecord userRecord : userRecords) {
+                        stmt.setLong(1, userRecord.getMid());
+                        stmt.setString(2, userRecord.getName());
+                        stmt.setString(3, userRecord.getSex());
+                        stmt.setString(4, userRecord.getBirthday());
+                        stmt.setShort(5, userRecord.getLevel());
+                        stmt.setInt(6, userRecord.getCoin());
+                        stmt.setString(7, userRecord.getSign());
+                        stmt.setString(8, userRecord.getIdentity().name());
+                        stmt.setString(9, userRecord.getPassword());
+                        stmt.setString(10, userRecord.getQq());
+                        stmt.setString(11, userRecord.getWechat());
+                        stmt.executeUpdate();
+                    }
+                }
+            }));
+            timings.add(measure(conn, "bench_user", "COPY text", userRecords.size(), iterations, () -> {
+                try (CopyRowWriter writer = new CopyRowWriter(CopyImporter.copyManager(conn), "COPY bench_user FROM STDIN")) {
+                    for (UserRecord userRecord : userRecords) {
+                        CopyImporter.writeUser(writer, userRecord);
+                    }
+                    writer.finish();
+                }
+            }));
+            timings.add(measure(conn, "bench_user", "COPY binary", userRecords.size(), iterations, () -> {
+                try (BinaryCopyWriter writer = new BinaryCopyWriter(CopyImporter.copyManager(conn), "COPY bench_user FROM STDIN WITH (FORMAT binary)")) {
+                    for (UserRecord userRecord : userRecords) {
+                        CopyImporter.writeUser(writer, userRecord);
+                    }
+                    writer.finish();
+                }
+            }));
+
+            timings.add(measure(conn, "bench_video", "PreparedStatement", videoRecords.size(), iterations, () -> {
+                try (PreparedStatement stmt = conn.prepareStatement(VIDEO_INSERT_SQL)) {
+                    for (VideoRecord videoRecord : videoRecords) {
+                        stmt.setString(1, videoRecord.getBv());
+                        stmt.setString(2, videoRecord.getTitle());
+                        stmt.setLong(3, videoRecord.getOwnerMid());
+                        stmt.setString(4, videoRecord.getOwnerName());
+                        stmt.setTimestamp(5, videoRecord.getCommitTime());
+                        stmt.setTimestamp(6, videoRecord.getReviewTime());
+                        stmt.setTimestamp(7, videoRecord.getPublicTime());
+                        stmt.setFloat(8, videoRecord.getDuration());
+                        stmt.setString(9, videoRecord.getDescription());
+                        stmt.setObject(10, videoRecord.getReviewer());
+                        stmt.executeUpdate();
+                    }
+                }
+            }));
+            timings.add(measure(conn, "bench_video", "COPY text", videoRecords.size(), iterations, () -> {
+                try (CopyRowWriter writer = new CopyRowWriter(CopyImporter.copyManager(conn), "COPY bench_video FROM STDIN")) {
+                    for (VideoRecord videoRecord : videoRecords) {
+                        CopyImporter.writeVideo(writer, videoRecord);
+                    }
+                    writer.finish();
+                }
+            }));
+            timings.add(measure(conn, "bench_video", "COPY binary", videoRecords.size(), iterations, () -> {
+                try (BinaryCopyWriter writer = new BinaryCopyWriter(CopyImporter.copyManager(conn), "COPY bench_video FROM STDIN WITH (FORMAT binary)")) {
+                    for (VideoRecord videoRecord : videoRecords) {
+                        CopyImporter.writeVideo(writer, videoRecord);
+                    }
+                    writer.finish();
+                }
+            }));
+
+            timings.add(measure(conn, "bench_danmu", "PreparedStatement", danmuRecords.size(), iterations, () -> {
+                try (PreparedStatement stmt = conn.prepareStatement(DANMU_INSERT_SQL)) {
+                    for (int i = 0; i < danmuRecords.size(); i++) {
+                        DanmuRecord danmuRecord = danmuRecords.get(i);
+                        stmt.setLong(1, CopyImporter.danmuId(i));
+                        stmt.setString(2, danmuRecord.getBv());
+                        stmt.setLong(3, danmuRecord.getMid());
+                        stmt.setFloat(4, danmuRecord.getTime());
+                        stmt.setString(5, danmuRecord.getContent());
+                        stmt.setTimestamp(6, danmuRecord.getPostTime());
+                        stmt.executeUpdate();
+                    }
+                }
+            }));
+            timings.add(measure(conn, "bench_danmu", "COPY text", danmuRecords.size(), iterations, () -> {
+                try (CopyRowWriter writer = new CopyRowWriter(CopyImporter.copyManager(conn), "COPY bench_danmu FROM STDIN")) {
+                    CopyImporter.writeDanmus(writer, danmuRecords, 0);
+                    writer.finish();
+                }
+            }));
+            timings.add(measure(conn, "bench_danmu", "COPY binary", danmuRecords.size(), iterations, () -> {
+                try (BinaryCopyWriter writer = new BinaryCopyWriter(CopyImporter.copyManager(conn), "COPY bench_danmu FROM STDIN WITH (FORMAT binary)")) {
+                    CopyImporter.writeDanmus(writer, danmuRecords, 0);
+                    writer.finish();
+                }
+            }));
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS bench_user, bench_video, bench_danmu");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return timings;
+    }
+
+    private static ImportFormatTiming measure(Connection conn, String table, String format, long rows, int iterations,
+                                              Load load) throws SQLException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < Math.max(1, iterations); i++) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("TRUNCATE " + table);
+            }
+            long startedTime = System.nanoTime();
+            load.run();
+            best = Math.min(best, System.nanoTime() - startedTime);
+        }
+        ImportFormatTiming timing = ImportFormatTiming.builder()
+                .table(table)
+                .format(format)
+                .rows(rows)
+                .elapsedTime(best)
+                .build();
+        log.info("{} via {}: {} rows in {} ms ({} rows/s)", table, format, rows,
+                TimeUnit.NANOSECONDS.toMillis(best), timing.getRowsPerSecond());
+        return timing;
+    }
+
+    @FunctionalInterface
+    private interface Load {
+
+        void run() throws SQLException;
+    }
+}
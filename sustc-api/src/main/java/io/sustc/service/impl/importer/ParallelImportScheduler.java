@@ -0,0 +1,244 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportOptions;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits the import records into chunks and copies them over several pooled connections at once.
+ * <p>
+ * Tables are loaded in phases that follow the foreign keys between them,
+ * and a phase only starts after every chunk of the previous one has been committed:
+ * <ol>
+ *   <li>{@code User_base}</li>
+ *   <li>{@code Video_base}, {@code User_follow}</li>
+ *   <li>{@code Danmu_base}, {@code Video_like}, {@code Video_coin}, {@code video_favorite}, {@code Video_viewer}</li>
+ *   <li>{@code Danmu_liked}</li>
+ * </ol>
+ * With {@link ImportOptions#isCheckpoint()}, every chunk commits together with its checkpoint,
+ * and chunks already committed by a previous run are skipped with {@link ImportOptions#isResume()}.
+ */
+@Component
+@Slf4j
+public class ParallelImportScheduler {
+
+    @Autowired
+    private CopyImporter copyImporter;
+
+    @Autowired
+    private ImportCheckpoint importCheckpoint;
+
+    public void importData(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
+        int chunkSize = Math.max(1, options.getChunkSize());
+        ImportCheckpoint.Progress progress = options.isCheckpoint() || options.isResume()
+                ? importCheckpoint.begin(chunkSize, options.isResume())
+                : null;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getParallelism()));
+        try {
+            boolean binary = options.getMode() == ImportOptions.Mode.BINARY_COPY;
+
+            Phase users = new Phase(executor, chunkSize, progress);
+            if (binary) {
+                users.submitBinary("User_base", CopyImporter.USER_BINARY_COPY_SQL, userRecords, (writer, chunk, firstIndex) -> {
+                    for (UserRecord userRecord : chunk) {
+                        CopyImporter.writeUser(writer, userRecord);
+                    }
+                });
+            } else {
+                users.submit("User_base", CopyImporter.USER_COPY_SQL, userRecords, (writer, chunk, firstIndex) -> {
+                    for (UserRecord userRecord : chunk) {
+                        CopyImporter.writeUser(writer, userRecord);
+                    }
+                });
+            }
+            users.await();
+
+            Phase videos = new Phase(executor, chunkSize, progress);
+            if (binary) {
+                videos.submitBinary("Video_base", CopyImporter.VIDEO_BINARY_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                    for (VideoRecord videoRecord : chunk) {
+                        CopyImporter.writeVideo(writer, videoRecord);
+                    }
+                });
+            } else {
+                videos.submit("Video_base", CopyImporter.VIDEO_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                    for (VideoRecord videoRecord : chunk) {
+                        CopyImporter.writeVideo(writer, videoRecord);
+                    }
+                });
+            }
+            videos.submit("User_follow", RelationImporter.FOLLOW_COPY_SQL, userRecords, (writer, chunk, firstIndex) -> {
+                for (UserRecord userRecord : chunk) {
+                    RelationImporter.writeFollows(writer, userRecord);
+                }
+            });
+            videos.await();
+
+            Phase danmus = new Phase(executor, chunkSize, progress);
+            if (binary) {
+                danmus.submitBinary("Danmu_base", CopyImporter.DANMU_BINARY_COPY_SQL, danmuRecords, CopyImporter::writeDanmus);
+            } else {
+                danmus.submit("Danmu_base", CopyImporter.DANMU_COPY_SQL, danmuRecords, CopyImporter::writeDanmus);
+            }
+            danmus.submit("Video_like", RelationImporter.LIKE_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                for (VideoRecord videoRecord : chunk) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getLike());
+                }
+            });
+            danmus.submit("Video_coin", RelationImporter.COIN_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                for (VideoRecord videoRecord : chunk) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getCoin());
+                }
+            });
+            danmus.submit("video_favorite", RelationImporter.FAVORITE_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                for (VideoRecord videoRecord : chunk) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getFavorite());
+                }
+            });
+            danmus.submit("Video_viewer", RelationImporter.VIEWER_COPY_SQL, videoRecords, (writer, chunk, firstIndex) -> {
+                for (VideoRecord videoRecord : chunk) {
+                    RelationImporter.writeViewers(writer, videoRecord);
+                }
+            });
+            danmus.await();
+
+            Phase danmuLikes = new Phase(executor, chunkSize, progress);
+            danmuLikes.submit("Danmu_liked", RelationImporter.DANMU_LIKE_COPY_SQL, danmuRecords, RelationImporter::writeDanmuLikes);
+            danmuLikes.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        copyImporter.syncDanmuSequence(danmuRecords.size());
+    }
+
+    @FunctionalInterface
+    interface ChunkWriter<T> {
+
+        /**
+         * @param firstIndex the position of {@code chunk} in the full record list
+         */
+        void write(CopyRowWriter writer, List<T> chunk, int firstIndex) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface BinaryChunkWriter<T> {
+
+        /**
+         * @param firstIndex the position of {@code chunk} in the full record list
+         */
+        void write(BinaryCopyWriter writer, List<T> chunk, int firstIndex) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkCopy<T> {
+
+        /**
+         * @return the number of copied rows
+         */
+        long copy(List<T> chunk, int firstIndex, CopyImporter.CommitHook beforeCommit);
+    }
+
+    /**
+     * A group of tables whose chunks may be copied concurrently.
+     */
+    private class Phase {
+
+        private final ExecutorService executor;
+
+        private final int chunkSize;
+
+        private final ImportCheckpoint.Progress progress;
+
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        private final List<TableProgress> tables = new ArrayList<>();
+
+        private final long startedTime = System.nanoTime();
+
+        Phase(ExecutorService executor, int chunkSize, ImportCheckpoint.Progress progress) {
+            this.executor = executor;
+            this.chunkSize = chunkSize;
+            this.progress = progress;
+        }
+
+        <T> void submit(String table, String sql, List<T> records, ChunkWriter<T> chunkWriter) {
+            submit(table, records, (chunk, firstIndex, beforeCommit) ->
+                    copyImporter.copyChunk(sql, writer -> chunkWriter.write(writer, chunk, firstIndex), beforeCommit));
+        }
+
+        <T> void submitBinary(String table, String sql, List<T> records, BinaryChunkWriter<T> chunkWriter) {
+            submit(table, records, (chunk, firstIndex, beforeCommit) ->
+                    copyImporter.copyBinaryChunk(sql, writer -> chunkWriter.write(writer, chunk, firstIndex), beforeCommit));
+        }
+
+        private <T> void submit(String table, List<T> records, ChunkCopy<T> chunkCopy) {
+            TableProgress tableProgress = new TableProgress(table);
+            tables.add(tableProgress);
+            int skipped = 0;
+            for (int from = 0; from < records.size(); from += chunkSize) {
+                int firstIndex = from;
+                int batch = from / chunkSize;
+                if (progress != null && progress.isCommitted(table, batch)) {
+                    skipped++;
+                    continue;
+                }
+                CopyImporter.CommitHook beforeCommit = progress == null
+                        ? null
+                        : (conn, rows) -> progress.record(conn, table, batch, rows);
+                List<T> chunk = records.subList(from, Math.min(records.size(), from + chunkSize));
+                futures.add(executor.submit(() -> tableProgress.rows.add(chunkCopy.copy(chunk, firstIndex, beforeCommit))));
+            }
+            if (skipped > 0) {
+                log.info("Skipped {} chunks of {} committed by a previous import", skipped, table);
+            }
+        }
+
+        void await() {
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw new RuntimeException(e.getCause());
+            }
+            long elapsed = System.nanoTime() - startedTime;
+            for (TableProgress table : tables) {
+                CopyImporter.report(table.name, table.rows.sum(), elapsed);
+            }
+        }
+    }
+
+    private static class TableProgress {
+
+        private final String name;
+
+        private final LongAdder rows = new LongAdder();
+
+        TableProgress(String name) {
+            this.name = name;
+        }
+    }
+}
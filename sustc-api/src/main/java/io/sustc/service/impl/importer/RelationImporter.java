@@ -0,0 +1,147 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Loads the relationship arrays of the import records
+ * ({@code following}, {@code like}, {@code coin}, {@code favorite}, {@code viewerMids}/{@code viewTime}
+ * and {@code likedBy}) into their relation tables.
+ * <p>
+ * The primitive arrays are written straight into the {@code COPY} stream,
+ * without collecting the pairs into intermediate objects first.
+ */
+@Component
+public class RelationImporter {
+
+    static final String FOLLOW_COPY_SQL = "COPY User_follow (upid, followerid) FROM STDIN";
+
+    static final String LIKE_COPY_SQL = "COPY Video_like (UserID, BvID) FROM STDIN";
+
+    static final String COIN_COPY_SQL = "COPY Video_coin (UserID, BvID) FROM STDIN";
+
+    static final String FAVORITE_COPY_SQL = "COPY video_favorite (UserID, BvID) FROM STDIN";
+
+    static final String VIEWER_COPY_SQL = "COPY Video_viewer (UserID, BvID, Time) FROM STDIN";
+
+    static final String DANMU_LIKE_COPY_SQL = "COPY Danmu_liked (UserID, DanmuID) FROM STDIN";
+
+    @Autowired
+    private CopyImporter copyImporter;
+
+    public void importFollows(List<UserRecord> userRecords) {
+        copyImporter.copy("User_follow", FOLLOW_COPY_SQL, writer -> {
+            for (UserRecord userRecord : userRecords) {
+                writeFollows(writer, userRecord);
+            }
+        });
+    }
+
+    public void importLikes(List<VideoRecord> videoRecords) {
+        copyImporter.copy("Video_like", LIKE_COPY_SQL, writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getLike());
+            }
+        });
+    }
+
+    public void importCoins(List<VideoRecord> videoRecords) {
+        copyImporter.copy("Video_coin", COIN_COPY_SQL, writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getCoin());
+            }
+        });
+    }
+
+    public void importFavorites(List<VideoRecord> videoRecords) {
+        copyImporter.copy("video_favorite", FAVORITE_COPY_SQL, writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getFavorite());
+            }
+        });
+    }
+
+    public void importViewers(List<VideoRecord> videoRecords) {
+        copyImporter.copy("Video_viewer", VIEWER_COPY_SQL, writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                writeViewers(writer, videoRecord);
+            }
+        });
+    }
+
+    /**
+     * Copies the danmu likes, referencing the danmus by the ids
+     * {@link CopyImporter#importDanmus(List)} assigned to them.
+     */
+    public void importDanmuLikes(List<DanmuRecord> danmuRecords) {
+        copyImporter.copy("Danmu_liked", DANMU_LIKE_COPY_SQL, writer -> writeDanmuLikes(writer, danmuRecords, 0));
+    }
+
+    /**
+     * Imports all relation tables, after their base tables have been loaded.
+     */
+    public void importAll(List<DanmuRecord> danmuRecords, List<UserRecord> userRecords, List<VideoRecord> videoRecords) {
+        importFollows(userRecords);
+        importLikes(videoRecords);
+        importCoins(videoRecords);
+        importFavorites(videoRecords);
+        importViewers(videoRecords);
+        importDanmuLikes(danmuRecords);
+    }
+
+    static void writeFollows(CopyRowWriter writer, UserRecord userRecord) throws SQLException {
+        long[] following = userRecord.getFollowing();
+        if (following == null) {
+            return;
+        }
+        for (long followee : following) {
+            writer.number(followee).number(userRecord.getMid()).endRow();
+        }
+    }
+
+    static void writeVideoUsers(CopyRowWriter writer, String bv, long[] mids) throws SQLException {
+        if (mids == null) {
+            return;
+        }
+        for (long mid : mids) {
+            writer.number(mid).text(bv).endRow();
+        }
+    }
+
+    static void writeViewers(CopyRowWriter writer, VideoRecord videoRecord) throws SQLException {
+        long[] viewerMids = videoRecord.getViewerMids();
+        float[] viewTime = videoRecord.getViewTime();
+        if (viewerMids == null || viewTime == null) {
+            return;
+        }
+        if (viewerMids.length != viewTime.length) {
+            throw new IllegalArgumentException("Video " + videoRecord.getBv() + " has " + viewerMids.length +
+                    " viewers but " + viewTime.length + " view times");
+        }
+        for (int i = 0; i < viewerMids.length; i++) {
+            writer.number(viewerMids[i]).text(videoRecord.getBv()).number(viewTime[i]).endRow();
+        }
+    }
+
+    static void writeDanmuLikes(CopyRowWriter writer, List<DanmuRecord> danmuRecords, int firstIndex) throws SQLException {
+        for (int i = 0; i < danmuRecords.size(); i++) {
+            writeDanmuLikes(writer, CopyImporter.danmuId(firstIndex + i), danmuRecords.get(i));
+        }
+    }
+
+    static void writeDanmuLikes(CopyRowWriter writer, long danmuId, DanmuRecord danmuRecord) throws SQLException {
+        long[] likedBy = danmuRecord.getLikedBy();
+        if (likedBy == null) {
+            return;
+        }
+        for (long mid : likedBy) {
+            writer.number(mid).number(danmuId).endRow();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package io.sustc.service.impl.importer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drops the indexes and constraints of the public tables before a bulk import and rebuilds them afterwards,
+ * so they are built once over the loaded data instead of being maintained row by row.
+ * <p>
+ * The definitions are recorded from the catalog before anything is dropped, and stored in the
+ * {@code deferred_schema} table in the same transaction as the drop, so the schema can still be restored
+ * by a later run if the process dies before the rebuild:
+ * <ol>
+ *   <li>foreign keys are dropped first, then primary key / unique constraints, then the remaining indexes</li>
+ *   <li>on rebuild, keys and indexes are created concurrently on separate connections,
+ *   foreign keys are added as {@code NOT VALID} and then validated concurrently,
+ *   and the tables are analyzed at last</li>
+ * </ol>
+ */
+@Component
+@Slf4j
+public class SchemaDeferrer {
+
+    private static final String FOREIGN_KEYS_SQL = "SELECT conrelid::regclass::text, conname, pg_get_constraintdef(oid) " +
+            "FROM pg_constraint WHERE contype = 'f' AND connamespace = 'public'::regnamespace";
+
+    private static final String KEYS_SQL = "SELECT conrelid::regclass::text, conname, pg_get_constraintdef(oid) " +
+            "FROM pg_constraint WHERE contype IN ('p', 'u') AND connamespace = 'public'::regnamespace";
+
+    private static final String INDEXES_SQL = "SELECT i.indrelid::regclass::text, i.indexrelid::regclass::text, pg_get_indexdef(i.indexrelid) " +
+            "FROM pg_index i JOIN pg_class c ON c.oid = i.indrelid " +
+            "WHERE c.relnamespace = 'public'::regnamespace AND NOT EXISTS " +
+            "(SELECT 1 FROM pg_constraint con WHERE con.conindid = i.indexrelid AND con.contype IN ('p', 'u', 'x'))";
+
+    private static final String CREATE_SQL = "CREATE TABLE IF NOT EXISTS deferred_schema (" +
+            "kind CHAR(1) NOT NULL, " +
+            "table_name TEXT NOT NULL, " +
+            "name TEXT NOT NULL, " +
+            "definition TEXT NOT NULL)";
+
+    private static final String SELECT_SQL = "SELECT DISTINCT kind, table_name, name, definition FROM deferred_schema";
+
+    private static final String INSERT_SQL = "INSERT INTO deferred_schema (kind, table_name, name, definition) VALUES (?, ?, ?, ?)";
+
+    private static final String EXISTS_SQL = "SELECT to_regclass('deferred_schema') IS NOT NULL";
+
+    private static final char FOREIGN_KEY = 'f';
+
+    private static final char KEY = 'k';
+
+    private static final char INDEX = 'i';
+
+    private static final String DUPLICATE_TABLE = "42P07";
+
+    private static final String DUPLICATE_OBJECT = "42710";
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Records and drops every foreign key, key constraint and index of the public tables in one transaction.
+     * Definitions still stored by an earlier run that did not finish its rebuild are kept and returned as well.
+     *
+     * @return the recorded definitions, to be passed to {@link #rebuild(DeferredSchema, int)}
+     */
+    public DeferredSchema drop() {
+        try (Connection conn = dataSource.getConnection()) {
+            DeferredSchema schema = new DeferredSchema(
+                    query(conn, FOREIGN_KEYS_SQL),
+                    query(conn, KEYS_SQL),
+                    query(conn, INDEXES_SQL)
+            );
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_SQL);
+                try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+                    store(insert, FOREIGN_KEY, schema.getForeignKeys());
+                    store(insert, KEY, schema.getKeys());
+                    store(insert, INDEX, schema.getIndexes());
+                    insert.executeBatch();
+                }
+                for (SchemaObject foreignKey : schema.getForeignKeys()) {
+                    stmt.execute("ALTER TABLE " + foreignKey.getTable() + " DROP CONSTRAINT " + quote(foreignKey.getName()));
+                }
+                for (SchemaObject key : schema.getKeys()) {
+                    stmt.execute("ALTER TABLE " + key.getTable() + " DROP CONSTRAINT " + quote(key.getName()));
+                }
+                for (SchemaObject index : schema.getIndexes()) {
+                    stmt.execute("DROP INDEX " + index.getName());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            log.info("Dropped {} foreign keys, {} keys and {} indexes before import",
+                    schema.getForeignKeys().size(), schema.getKeys().size(), schema.getIndexes().size());
+            return stored(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the definitions stored by an earlier run that did not finish its rebuild, if there are any.
+     *
+     * @param parallelism the number of connections building indexes at the same time
+     */
+    public void restore(int parallelism) {
+        DeferredSchema schema;
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(EXISTS_SQL)) {
+            rs.next();
+            if (!rs.getBoolean(1)) {
+                return;
+            }
+            schema = stored(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        if (schema.getForeignKeys().isEmpty() && schema.getKeys().isEmpty() && schema.getIndexes().isEmpty()) {
+            return;
+        }
+        log.warn("Restoring the schema left dropped by an earlier import");
+        rebuild(schema, parallelism);
+    }
+
+    /**
+     * Rebuilds the dropped definitions and analyzes the tables.
+     * Objects that already exist are skipped, so this can also be used to restore the schema after a failed import.
+     * <p>
+     * Every statement is attempted even if some fail. The stored definitions are only cleared once all of them
+     * succeeded, otherwise they are kept for {@link #restore(int)} and the failures are thrown together.
+     *
+     * @param schema      the definitions recorded by {@link #drop()}
+     * @param parallelism the number of connections building indexes at the same time
+     * @throws RuntimeException carrying every failed statement as a suppressed exception
+     */
+    public void rebuild(DeferredSchema schema, int parallelism) {
+        long startedTime = System.nanoTime();
+        List<Exception> failures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            List<String> build = new ArrayList<>();
+            for (SchemaObject key : schema.getKeys()) {
+                build.add("ALTER TABLE " + key.getTable() + " ADD CONSTRAINT " + quote(key.getName()) + " " + key.getDefinition());
+            }
+            for (SchemaObject index : schema.getIndexes()) {
+                build.add(index.getDefinition());
+            }
+            runAll(executor, build, failures);
+
+            List<String> validate = new ArrayList<>();
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                for (SchemaObject foreignKey : schema.getForeignKeys()) {
+                    String definition = foreignKey.getDefinition();
+                    String validation = null;
+                    if (!definition.endsWith("NOT VALID")) {
+                        definition += " NOT VALID";
+                        validation = "ALTER TABLE " + foreignKey.getTable() + " VALIDATE CONSTRAINT " + quote(foreignKey.getName());
+                    }
+                    // a foreign key that could not be added has nothing to validate
+                    if (execute(stmt, "ALTER TABLE " + foreignKey.getTable() + " ADD CONSTRAINT " + quote(foreignKey.getName()) + " " + definition, failures)
+                            && validation != null) {
+                        validate.add(validation);
+                    }
+                }
+            }
+            runAll(executor, validate, failures);
+
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                execute(stmt, "ANALYZE", failures);
+                if (failures.isEmpty()) {
+                    execute(stmt, "DROP TABLE IF EXISTS deferred_schema", failures);
+                }
+            }
+        } catch (SQLException e) {
+            failures.add(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!failures.isEmpty()) {
+            RuntimeException e = new RuntimeException("Failed to rebuild the schema in " + failures.size() +
+                    " statements, the definitions are kept in deferred_schema to be restored later");
+            failures.forEach(e::addSuppressed);
+            throw e;
+        }
+        log.info("Rebuilt {} foreign keys, {} keys and {} indexes in {} ms",
+                schema.getForeignKeys().size(), schema.getKeys().size(), schema.getIndexes().size(),
+                (System.nanoTime() - startedTime) / 1_000_000);
+    }
+
+    private void runAll(ExecutorService executor, List<String> statements, List<Exception> failures) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (String sql : statements) {
+            futures.add(executor.submit(() -> {
+                try (Connection conn = dataSource.getConnection();
+                     Statement stmt = conn.createStatement()) {
+                    execute(stmt, sql, failures);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // failing to get a connection, the statements themselves record their failures
+                synchronized (failures) {
+                    failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether {@code sql} succeeded or found its object already existing, otherwise the failure is added to {@code failures}
+     */
+    private static boolean execute(Statement stmt, String sql, List<Exception> failures) {
+        try {
+            stmt.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            if (DUPLICATE_TABLE.equals(e.getSQLState()) || DUPLICATE_OBJECT.equals(e.getSQLState())) {
+                return true;
+            }
+            log.error("Failed to rebuild: {}", sql);
+            synchronized (failures) {
+                failures.add(new SQLException("Failed to rebuild: " + sql, e.getSQLState(), e));
+            }
+            return false;
+        }
+    }
+
+    private static void store(PreparedStatement insert, char kind, List<SchemaObject> objects) throws SQLException {
+        for (SchemaObject object : objects) {
+            insert.setString(1, String.valueOf(kind));
+            insert.setString(2, object.getTable());
+            insert.setString(3, object.getName());
+            insert.setString(4, object.getDefinition());
+            insert.addBatch();
+        }
+    }
+
+    /**
+     * Reads the definitions stored in {@code deferred_schema}, which exists when this is called.
+     */
+    private static DeferredSchema stored(Connection conn) throws SQLException {
+        DeferredSchema schema = new DeferredSchema(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                SchemaObject object = new SchemaObject(rs.getString(2), rs.getString(3), rs.getString(4));
+                switch (rs.getString(1).charAt(0)) {
+                    case FOREIGN_KEY:
+                        schema.getForeignKeys().add(object);
+                        break;
+                    case KEY:
+                        schema.getKeys().add(object);
+                        break;
+                    default:
+                        schema.getIndexes().add(object);
+                        break;
+                }
+            }
+        }
+        return schema;
+    }
+
+    private static List<SchemaObject> query(Connection conn, String sql) throws SQLException {
+        List<SchemaObject> objects = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                objects.add(new SchemaObject(rs.getString(1), rs.getString(2), rs.getString(3)));
+            }
+        }
+        return objects;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DeferredSchema {
+
+        private final List<SchemaObject> foreignKeys;
+
+        private final List<SchemaObject> keys;
+
+        private final List<SchemaObject> indexes;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SchemaObject {
+
+        /**
+         * The owning table, as printed by {@code regclass}.
+         */
+        private final String table;
+
+        /**
+         * The constraint name, or the index name as printed by {@code regclass}.
+         */
+        private final String name;
+
+        private final String definition;
+    }
+}
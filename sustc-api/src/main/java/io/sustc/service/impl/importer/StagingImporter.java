@@ -0,0 +1,211 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportOptions;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the records into {@code UNLOGGED} staging tables without indexes or constraints,
+ * then moves them into the live tables with one {@code INSERT ... SELECT} per table.
+ * <p>
+ * The staging tables skip the WAL and have no foreign keys to check,
+ * so they are all copied concurrently; the merge runs in a single transaction in foreign-key order,
+ * where the foreign keys of the live tables reject records referring to missing users or videos, as the other modes do.
+ * Video owner names are kept as in the records and only filled in from {@code User_base} when missing;
+ * videos whose owner name differs from the owner's user name are reported.
+ */
+@Component
+@Slf4j
+public class StagingImporter {
+
+    private static final String[] CREATE_SQL = {
+            "CREATE UNLOGGED TABLE stage_user (mid BIGINT, name TEXT, sex TEXT, birthday TEXT, level SMALLINT, " +
+                    "coin INTEGER, sign TEXT, identity TEXT, password TEXT, qq TEXT, wechat TEXT)",
+            "CREATE UNLOGGED TABLE stage_video (bv TEXT, title TEXT, owner_mid BIGINT, owner_name TEXT, " +
+                    "commit_time TIMESTAMP, review_time TIMESTAMP, public_time TIMESTAMP, duration REAL, " +
+                    "description TEXT, reviewer BIGINT)",
+            "CREATE UNLOGGED TABLE stage_danmu (danmu_id BIGINT, bv TEXT, mid BIGINT, display_time REAL, " +
+                    "content TEXT, post_time TIMESTAMP)",
+            "CREATE UNLOGGED TABLE stage_follow (upid BIGINT, follower_id BIGINT)",
+            "CREATE UNLOGGED TABLE stage_like (mid BIGINT, bv TEXT)",
+            "CREATE UNLOGGED TABLE stage_coin (mid BIGINT, bv TEXT)",
+            "CREATE UNLOGGED TABLE stage_favorite (mid BIGINT, bv TEXT)",
+            "CREATE UNLOGGED TABLE stage_viewer (mid BIGINT, bv TEXT, time REAL)",
+            "CREATE UNLOGGED TABLE stage_danmu_like (mid BIGINT, danmu_id BIGINT)",
+    };
+
+    private static final String DROP_SQL = "DROP TABLE IF EXISTS stage_user, stage_video, stage_danmu, stage_follow, " +
+            "stage_like, stage_coin, stage_favorite, stage_viewer, stage_danmu_like";
+
+    private static final String[] MERGE_SQL = {
+            "INSERT INTO User_base (UserID, Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) " +
+                    "SELECT mid, name, sex, birthday, level, coin, sign, identity, password, qq, wechat FROM stage_user",
+            "INSERT INTO Video_base (BvID, Title, OwnerID, OwnerName, CommitTime, ReviewTime, PublicTime, Duration, Description, Reviewer) " +
+                    "SELECT v.bv, v.title, v.owner_mid, COALESCE(v.owner_name, u.Name), v.commit_time, v.review_time, v.public_time, " +
+                    "v.duration, v.description, v.reviewer " +
+                    "FROM stage_video v LEFT JOIN User_base u ON u.UserID = v.owner_mid",
+            "INSERT INTO Danmu_base (DanmuID, BvID, UserID, DisplayTime, Content, PostTime) " +
+                    "SELECT danmu_id, bv, mid, display_time, content, post_time FROM stage_danmu",
+            "INSERT INTO User_follow (upid, followerid) SELECT upid, follower_id FROM stage_follow",
+            "INSERT INTO Video_like (UserID, BvID) SELECT mid, bv FROM stage_like",
+            "INSERT INTO Video_coin (UserID, BvID) SELECT mid, bv FROM stage_coin",
+            "INSERT INTO video_favorite (UserID, BvID) SELECT mid, bv FROM stage_favorite",
+            "INSERT INTO Video_viewer (UserID, BvID, Time) SELECT mid, bv, time FROM stage_viewer",
+            "INSERT INTO Danmu_liked (UserID, DanmuID) SELECT mid, danmu_id FROM stage_danmu_like",
+    };
+
+    private static final String OWNER_NAME_MISMATCH_SQL = "SELECT v.bv, v.owner_name, u.Name FROM stage_video v " +
+            "JOIN User_base u ON u.UserID = v.owner_mid WHERE v.owner_name <> u.Name";
+
+    /**
+     * How many mismatching videos are named in the report, the rest are only counted.
+     */
+    private static final int REPORTED_MISMATCHES = 5;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private CopyImporter copyImporter;
+
+    public void importData(
+            List<DanmuRecord> danmuRecords,
+            List<UserRecord> userRecords,
+            List<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
+        execute(DROP_SQL);
+        execute(CREATE_SQL);
+        try {
+            stage(danmuRecords, userRecords, videoRecords, options.getParallelism());
+            merge();
+        } finally {
+            execute(DROP_SQL);
+        }
+        copyImporter.syncDanmuSequence(danmuRecords.size());
+    }
+
+    private void stage(List<DanmuRecord> danmuRecords, List<UserRecord> userRecords, List<VideoRecord> videoRecords,
+                       int parallelism) {
+        List<Callable<Long>> copies = new ArrayList<>();
+        copies.add(() -> copyImporter.copy("stage_user", "COPY stage_user FROM STDIN", writer -> {
+            for (UserRecord userRecord : userRecords) {
+                CopyImporter.writeUser(writer, userRecord);
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_video", "COPY stage_video FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                CopyImporter.writeVideo(writer, videoRecord);
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_danmu", "COPY stage_danmu FROM STDIN",
+                writer -> CopyImporter.writeDanmus(writer, danmuRecords, 0)));
+        copies.add(() -> copyImporter.copy("stage_follow", "COPY stage_follow FROM STDIN", writer -> {
+            for (UserRecord userRecord : userRecords) {
+                RelationImporter.writeFollows(writer, userRecord);
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_like", "COPY stage_like FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getLike());
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_coin", "COPY stage_coin FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getCoin());
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_favorite", "COPY stage_favorite FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getFavorite());
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_viewer", "COPY stage_viewer FROM STDIN", writer -> {
+            for (VideoRecord videoRecord : videoRecords) {
+                RelationImporter.writeViewers(writer, videoRecord);
+            }
+        }));
+        copies.add(() -> copyImporter.copy("stage_danmu_like", "COPY stage_danmu_like FROM STDIN",
+                writer -> RelationImporter.writeDanmuLikes(writer, danmuRecords, 0)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            for (Future<Long> future : executor.invokeAll(copies)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void merge() {
+        long startedTime = System.nanoTime();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : MERGE_SQL) {
+                    stmt.executeUpdate(sql);
+                }
+                reportOwnerNameMismatches(stmt);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Merged staging tables in {} ms", (System.nanoTime() - startedTime) / 1_000_000);
+    }
+
+    private static void reportOwnerNameMismatches(Statement stmt) throws SQLException {
+        int count = 0;
+        List<String> examples = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery(OWNER_NAME_MISMATCH_SQL)) {
+            while (rs.next()) {
+                if (count++ < REPORTED_MISMATCHES) {
+                    examples.add(rs.getString(1) + " (" + rs.getString(2) + " / " + rs.getString(3) + ")");
+                }
+            }
+        }
+        if (count > 0) {
+            log.warn("{} videos have an owner name other than the owner's user name, kept as in the records: {}",
+                    count, String.join(", ", examples));
+        }
+    }
+
+    private void execute(String... statements) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
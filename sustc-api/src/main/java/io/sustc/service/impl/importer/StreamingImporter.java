@@ -0,0 +1,300 @@
+package io.sustc.service.impl.importer;
+
+import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportOptions;
+import io.sustc.dto.UserRecord;
+import io.sustc.dto.VideoRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Imports records pulled from iterators while they are still being produced.
+ * <p>
+ * Each table runs as a pipeline of three stages connected by bounded queues:
+ * <ol>
+ *   <li>decode: whatever produces the records behind the iterator</li>
+ *   <li>batch: the calling thread, grouping records into chunks of {@link ImportOptions#getChunkSize()}</li>
+ *   <li>write: {@link ImportOptions#getParallelism()} threads copying the chunks</li>
+ * </ol>
+ * The time each stage spends waiting on its neighbours is reported after every table,
+ * which tells whether decoding or writing is the bottleneck.
+ * <p>
+ * Users are loaded first, then videos with their relations, then danmus with their likes,
+ * so that foreign keys always point to committed rows.
+ * Follows are buffered as primitive arrays and written after all users.
+ */
+@Component
+@Slf4j
+public class StreamingImporter {
+
+    private static final Batch<?> END = new Batch<>(Collections.emptyList(), -1);
+
+    @Autowired
+    private CopyImporter copyImporter;
+
+    public void importStream(
+            Iterator<DanmuRecord> danmuRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<VideoRecord> videoRecords,
+            ImportOptions options
+    ) {
+        FollowBuffer follows = new FollowBuffer();
+        run("User_base", userRecords, options, follows::add, batch ->
+                copyImporter.copyChunk(CopyImporter.USER_COPY_SQL, writer -> {
+                    for (UserRecord userRecord : batch.records) {
+                        CopyImporter.writeUser(writer, userRecord);
+                    }
+                }));
+        copyImporter.copy("User_follow", RelationImporter.FOLLOW_COPY_SQL, follows::writeTo);
+
+        run("Video_base", videoRecords, options, null, batch -> {
+            long rows = copyImporter.copyChunk(CopyImporter.VIDEO_COPY_SQL, writer -> {
+                for (VideoRecord videoRecord : batch.records) {
+                    CopyImporter.writeVideo(writer, videoRecord);
+                }
+            });
+            copyImporter.copyChunk(RelationImporter.LIKE_COPY_SQL, writer -> {
+                for (VideoRecord videoRecord : batch.records) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getLike());
+                }
+            });
+            copyImporter.copyChunk(RelationImporter.COIN_COPY_SQL, writer -> {
+                for (VideoRecord videoRecord : batch.records) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getCoin());
+                }
+            });
+            copyImporter.copyChunk(RelationImporter.FAVORITE_COPY_SQL, writer -> {
+                for (VideoRecord videoRecord : batch.records) {
+                    RelationImporter.writeVideoUsers(writer, videoRecord.getBv(), videoRecord.getFavorite());
+                }
+            });
+            copyImporter.copyChunk(RelationImporter.VIEWER_COPY_SQL, writer -> {
+                for (VideoRecord videoRecord : batch.records) {
+                    RelationImporter.writeViewers(writer, videoRecord);
+                }
+            });
+            return rows;
+        });
+
+        long danmuCount = run("Danmu_base", danmuRecords, options, null, batch -> {
+            long rows = copyImporter.copyChunk(CopyImporter.DANMU_COPY_SQL,
+                    writer -> CopyImporter.writeDanmus(writer, batch.records, batch.firstIndex));
+            copyImporter.copyChunk(RelationImporter.DANMU_LIKE_COPY_SQL,
+                    writer -> RelationImporter.writeDanmuLikes(writer, batch.records, batch.firstIndex));
+            return rows;
+        });
+        copyImporter.syncDanmuSequence(danmuCount);
+    }
+
+    /**
+     * Runs the batch and write stages of one table until {@code records} is exhausted.
+     *
+     * @param peek    called on the batching thread for every record, may be null
+     * @param handler writes one batch, returns the number of base table rows written
+     * @return the number of records read from {@code records}
+     */
+    private <T> long run(String table, Iterator<T> records, ImportOptions options, RecordPeek<T> peek, BatchHandler<T> handler) {
+        int parallelism = Math.max(1, options.getParallelism());
+        int chunkSize = Math.max(1, options.getChunkSize());
+        BlockingQueue<Batch<T>> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        StageMetrics metrics = new StageMetrics();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        LongAdder rows = new LongAdder();
+        long startedTime = System.nanoTime();
+
+        ExecutorService writers = Executors.newFixedThreadPool(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            writers.execute(() -> {
+                try {
+                    while (true) {
+                        long waitStarted = System.nanoTime();
+                        Batch<T> batch = queue.take();
+                        long writeStarted = System.nanoTime();
+                        metrics.writerIdle.add(writeStarted - waitStarted);
+                        if (batch == END) {
+                            return;
+                        }
+                        rows.add(handler.write(batch));
+                        metrics.writerBusy.add(System.nanoTime() - writeStarted);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        int count = 0;
+        try {
+            List<T> chunk = new ArrayList<>(chunkSize);
+            int firstIndex = 0;
+            while (true) {
+                long waitStarted = System.nanoTime();
+                boolean hasNext = records.hasNext();
+                T record = hasNext ? records.next() : null;
+                metrics.decodeWait.add(System.nanoTime() - waitStarted);
+                if (!hasNext) {
+                    break;
+                }
+                if (peek != null) {
+                    peek.accept(record);
+                }
+                chunk.add(record);
+                count++;
+                if (chunk.size() == chunkSize) {
+                    offer(queue, new Batch<>(chunk, firstIndex), failure, metrics);
+                    chunk = new ArrayList<>(chunkSize);
+                    firstIndex = count;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                offer(queue, new Batch<>(chunk, firstIndex), failure, metrics);
+            }
+            for (int i = 0; i < parallelism; i++) {
+                offer(queue, end(), failure, metrics);
+            }
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            writers.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Failed to import " + table, failure.get());
+        }
+        CopyImporter.report(table, rows.sum(), System.nanoTime() - startedTime);
+        metrics.report(table);
+        return count;
+    }
+
+    private static <T> void offer(BlockingQueue<Batch<T>> queue, Batch<T> batch, AtomicReference<Throwable> failure,
+                                  StageMetrics metrics) throws InterruptedException {
+        long waitStarted = System.nanoTime();
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    throw new RuntimeException(failure.get());
+                }
+            }
+        } finally {
+            metrics.writerBackpressure.add(System.nanoTime() - waitStarted);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Batch<T> end() {
+        return (Batch<T>) END;
+    }
+
+    @FunctionalInterface
+    interface RecordPeek<T> {
+
+        void accept(T record);
+    }
+
+    @FunctionalInterface
+    interface BatchHandler<T> {
+
+        long write(Batch<T> batch) throws SQLException;
+    }
+
+    static class Batch<T> {
+
+        final List<T> records;
+
+        /**
+         * The position of the first record in the whole stream.
+         */
+        final int firstIndex;
+
+        Batch(List<T> records, int firstIndex) {
+            this.records = records;
+            this.firstIndex = firstIndex;
+        }
+    }
+
+    /**
+     * Time spent by the stages waiting on each other, in nanoseconds.
+     */
+    static class StageMetrics {
+
+        /**
+         * Batch stage waiting for the iterator to produce the next record.
+         */
+        final LongAdder decodeWait = new LongAdder();
+
+        /**
+         * Batch stage waiting for a free slot in the queue to the writers.
+         */
+        final LongAdder writerBackpressure = new LongAdder();
+
+        /**
+         * Writers waiting for a batch, summed over all writer threads.
+         */
+        final LongAdder writerIdle = new LongAdder();
+
+        /**
+         * Writers copying batches, summed over all writer threads.
+         */
+        final LongAdder writerBusy = new LongAdder();
+
+        void report(String table) {
+            long decodeWaitMs = TimeUnit.NANOSECONDS.toMillis(decodeWait.sum());
+            long backpressureMs = TimeUnit.NANOSECONDS.toMillis(writerBackpressure.sum());
+            String bottleneck = backpressureMs > decodeWaitMs ? "write" : "decode";
+            log.info("{} pipeline: batcher waited {} ms for decoding and {} ms for writers, " +
+                            "writers idle {} ms and busy {} ms in total, bottleneck: {}",
+                    table, decodeWaitMs, backpressureMs,
+                    TimeUnit.NANOSECONDS.toMillis(writerIdle.sum()), TimeUnit.NANOSECONDS.toMillis(writerBusy.sum()),
+                    bottleneck);
+        }
+    }
+
+    /**
+     * Collects {@code UserRecord.following} until every user is loaded.
+     * Only the mids and the primitive arrays are kept, so the rest of the user records can be collected.
+     */
+    private static class FollowBuffer {
+
+        private long[] mids = new long[1024];
+
+        private final List<long[]> followings = new ArrayList<>();
+
+        void add(UserRecord userRecord) {
+            if (userRecord.getFollowing() == null || userRecord.getFollowing().length == 0) {
+                return;
+            }
+            int size = followings.size();
+            if (size == mids.length) {
+                long[] grown = new long[size * 2];
+                System.arraycopy(mids, 0, grown, 0, size);
+                mids = grown;
+            }
+            mids[size] = userRecord.getMid();
+            followings.add(userRecord.getFollowing());
+        }
+
+        void writeTo(CopyRowWriter writer) throws SQLException {
+            for (int i = 0; i < followings.size(); i++) {
+                for (long followee : followings.get(i)) {
+                    writer.number(followee).number(mids[i]).endRow();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package io.sustc.service.impl.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.sustc.dto.PoolStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how the connections of the Hikari pools are taken and held.
+ * <p>
+ * Every connection handed out is wrapped in a proxy that records when and by whom it was taken, so that
+ * the time spent waiting for the pool, the time each service method holds its connection
+ * and the connections held for suspiciously long can be reported with {@link #getStats()}.
+ * A connection is attributed to the {@code @Transactional} service method it serves,
+ * connections taken outside the services are attributed to {@code other}.
+ * <p>
+ * With leak detection enabled, the statements and result sets of a connection are wrapped as well,
+ * and the place each one was opened is recorded. A result set still open when its statement is closed,
+ * or a statement still open when its connection is returned, is reported with that place.
+ * Recording it costs a stack walk per statement, so leak detection is off by default.
+ * <p>
+ * Connections to a read replica are measured along with those to the primary,
+ * but the active, idle and pending counts are those of the primary pool.
+ */
+@Slf4j
+public class ConnectionMonitor extends DelegatingDataSource {
+
+    private static final long[] ACQUIRE_BUCKET_MICROS = {100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000};
+
+    private static final long LEAK_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final String OTHER = "other";
+
+    private final HikariDataSource pool;
+
+    private final boolean leakDetection;
+
+    private final LongAdder[] acquireHistogram = new LongAdder[ACQUIRE_BUCKET_MICROS.length + 1];
+
+    private final LongAdder acquireTime = new LongAdder();
+
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> leftOpen = new ConcurrentHashMap<>();
+
+    /**
+     * @param target the data source the connections are taken from
+     * @param pool   the primary pool, whose counts are reported
+     */
+    public ConnectionMonitor(DataSource target, HikariDataSource pool, boolean leakDetection) {
+        super(target);
+        this.pool = pool;
+        this.leakDetection = leakDetection;
+        for (int i = 0; i < acquireHistogram.length; i++) {
+            acquireHistogram[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long startedTime = System.nanoTime();
+        Connection conn = obtainTargetDataSource().getConnection();
+        long acquiredTime = System.nanoTime();
+        recordAcquire(acquiredTime - startedTime);
+        Lease lease = new Lease(conn, Thread.currentThread(), acquiredTime, leakDetection ? callSite() : null);
+        leases.add(lease);
+        return (Connection) Proxy.newProxyInstance(ConnectionMonitor.class.getClassLoader(), new Class<?>[]{Connection.class}, lease);
+    }
+
+    public PoolStats getStats() {
+        HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+        long now = System.nanoTime();
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        long acquisitions = 0;
+        for (int i = 0; i < acquireHistogram.length; i++) {
+            long count = acquireHistogram[i].sum();
+            acquisitions += count;
+            histogram.put(i < ACQUIRE_BUCKET_MICROS.length
+                    ? "<= " + millis(ACQUIRE_BUCKET_MICROS[i])
+                    : "> " + millis(ACQUIRE_BUCKET_MICROS[i - 1]), count);
+        }
+
+        Lease longest = null;
+        List<String> suspectedLeaks = new ArrayList<>();
+        for (Lease lease : leases) {
+            if (longest == null || lease.acquiredTime - longest.acquiredTime < 0) {
+                longest = lease;
+            }
+            if (now - lease.acquiredTime > LEAK_THRESHOLD_NANOS) {
+                suspectedLeaks.add(String.format("held for %d ms by %s%s", TimeUnit.NANOSECONDS.toMillis(now - lease.acquiredTime),
+                        lease.holder(), lease.site != null ? ", taken at " + lease.site : ""));
+            }
+        }
+
+        List<PoolStats.HoldTime> holdTimes = new ArrayList<>();
+        holds.forEach((method, hold) -> holdTimes.add(PoolStats.HoldTime.builder()
+                .method(method)
+                .connections(hold.connections.sum())
+                .totalTime(hold.totalTime.sum())
+                .maxTime(hold.maxTime.get())
+                .build()));
+        holdTimes.sort((a, b) -> Long.compare(b.getTotalTime(), a.getTotalTime()));
+
+        Map<String, Long> leftOpenCounts = new LinkedHashMap<>();
+        leftOpen.forEach((site, count) -> leftOpenCounts.put(site, count.sum()));
+
+        return PoolStats.builder()
+                .activeConnections(mxBean == null ? 0 : mxBean.getActiveConnections())
+                .idleConnections(mxBean == null ? 0 : mxBean.getIdleConnections())
+                .pendingThreads(mxBean == null ? 0 : mxBean.getThreadsAwaitingConnection())
+                .maximumPoolSize(pool.getMaximumPoolSize())
+                .acquisitions(acquisitions)
+                .acquireTime(acquireTime.sum())
+                .acquireHistogram(histogram)
+                .longestHeldTime(longest == null ? 0 : now - longest.acquiredTime)
+                .longestHeldBy(longest == null ? null : longest.holder())
+                .holdTimes(holdTimes)
+                .suspectedLeaks(suspectedLeaks)
+                .leftOpen(leftOpenCounts)
+                .build();
+    }
+
+    private void recordAcquire(long nanos) {
+        acquireTime.add(nanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 0;
+        while (bucket < ACQUIRE_BUCKET_MICROS.length && micros > ACQUIRE_BUCKET_MICROS[bucket]) {
+            bucket++;
+        }
+        acquireHistogram[bucket].increment();
+    }
+
+    private static String millis(long micros) {
+        return (micros % 1000 == 0 ? String.valueOf(micros / 1000) : String.valueOf(micros / 1000.0)) + " ms";
+    }
+
+    private void reportLeftOpen(String resource, String site, String until) {
+        String key = resource + " opened at " + site + " was left open until " + until;
+        LongAdder count = leftOpen.computeIfAbsent(key, k -> new LongAdder());
+        if (count.sum() == 0) {
+            log.warn(key);
+        }
+        count.increment();
+    }
+
+    /**
+     * The service method a connection serves, named after its transaction, or null outside a transaction.
+     */
+    private static String transactionMethod() {
+        String name = TransactionSynchronizationManager.getCurrentTransactionName();
+        if (name == null) {
+            return null;
+        }
+        int method = name.lastIndexOf('.');
+        int type = method > 0 ? name.lastIndexOf('.', method - 1) : -1;
+        return name.substring(type + 1);
+    }
+
+    /**
+     * The innermost frame of the application outside this package, such as {@code DanmuServiceImpl.sendDanmu(DanmuServiceImpl.java:81)}.
+     */
+    private static String callSite() {
+        String site = describe(new Throwable().getStackTrace(), false);
+        return site != null ? site : "unknown";
+    }
+
+    private static String describe(StackTraceElement[] frames, boolean serviceOnly) {
+        String ownPackage = ConnectionMonitor.class.getPackage().getName() + ".";
+        for (StackTraceElement frame : frames) {
+            String className = frame.getClassName();
+            int generated = className.indexOf("$$");
+            if (generated >= 0) {
+                className = className.substring(0, generated);
+            }
+            if (!className.startsWith("io.sustc.") || className.startsWith(ownPackage)
+                    || serviceOnly && !className.endsWith("ServiceImpl")) {
+                continue;
+            }
+            String simpleName = className.substring(className.lastIndexOf('.') + 1);
+            return frame.getFileName() == null || frame.getLineNumber() < 0
+                    ? simpleName + "." + frame.getMethodName()
+                    : simpleName + "." + frame.getMethodName() + "(" + frame.getFileName() + ":" + frame.getLineNumber() + ")";
+        }
+        return null;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static class Hold {
+
+        private final LongAdder connections = new LongAdder();
+
+        private final LongAdder totalTime = new LongAdder();
+
+        private final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * One connection taken from the pool, until it is returned.
+     */
+    private class Lease implements InvocationHandler {
+
+        private final Connection target;
+
+        private final Thread thread;
+
+        private final long acquiredTime;
+
+        private final String site;
+
+        private final List<Tracked> statements = new ArrayList<>();
+
+        private volatile String owner;
+
+        private boolean released;
+
+        Lease(Connection target, Thread thread, long acquiredTime, String site) {
+            this.target = target;
+            this.thread = thread;
+            this.acquiredTime = acquiredTime;
+            this.site = site;
+        }
+
+        /**
+         * The method holding the connection: its service method, else the service method or application frame
+         * the thread that took it is currently in, for connections taken outside a transaction.
+         */
+        String holder() {
+            if (owner != null) {
+                return owner;
+            }
+            StackTraceElement[] frames = thread.getStackTrace();
+            String service = describe(frames, true);
+            if (service != null) {
+                return service;
+            }
+            String frame = describe(frames, false);
+            return frame != null ? frame : thread.getName();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Monitored " + target;
+                case "close":
+                    release();
+                    break;
+                default:
+                    if (owner == null) {
+                        owner = transactionMethod();
+                    }
+                    break;
+            }
+            Object result = ConnectionMonitor.invoke(target, method, args);
+            if (leakDetection && result instanceof Statement && method.getReturnType().isInterface()) {
+                Tracked statement = new Tracked(result, "Statement", callSite());
+                synchronized (this) {
+                    statements.add(statement);
+                }
+                return statement.proxy(method.getReturnType());
+            }
+            return result;
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                for (Tracked statement : statements) {
+                    if (!statement.closed) {
+                        reportLeftOpen("Statement", statement.site, "its connection was returned");
+                        statement.closeChildren("its connection was returned");
+                    }
+                }
+                statements.clear();
+            }
+            leases.remove(this);
+            long heldTime = System.nanoTime() - acquiredTime;
+            Hold hold = holds.computeIfAbsent(owner != null ? owner : OTHER, m -> new Hold());
+            hold.connections.increment();
+            hold.totalTime.add(heldTime);
+            hold.maxTime.accumulate(heldTime);
+        }
+
+        /**
+         * A statement or result set opened on the connection, only tracked with leak detection.
+         */
+        private class Tracked implements InvocationHandler {
+
+            private final Object target;
+
+            private final String resource;
+
+            private final String site;
+
+            private final List<Tracked> resultSets = new ArrayList<>();
+
+            private Object proxy;
+
+            private boolean closed;
+
+            Tracked(Object target, String resource, String site) {
+                this.target = target;
+                this.resource = resource;
+                this.site = site;
+            }
+
+            Object proxy(Class<?> type) {
+                if (proxy == null) {
+                    proxy = Proxy.newProxyInstance(ConnectionMonitor.class.getClassLoader(), new Class<?>[]{type}, this);
+                }
+                return proxy;
+            }
+
+            void closeChildren(String until) {
+                for (Tracked resultSet : resultSets) {
+                    if (!resultSet.closed) {
+                        reportLeftOpen(resultSet.resource, resultSet.site, until);
+                    }
+                }
+                resultSets.clear();
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "close":
+                        synchronized (Lease.this) {
+                            if (!closed) {
+                                closed = true;
+                                closeChildren("its statement was closed");
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                Object result = ConnectionMonitor.invoke(target, method, args);
+                if (result instanceof ResultSet) {
+                    synchronized (Lease.this) {
+                        // getResultSet() returns the same result set until the next execution
+                        for (Tracked resultSet : resultSets) {
+                            if (resultSet.target == result) {
+                                return resultSet.proxy(ResultSet.class);
+                            }
+                        }
+                        Tracked resultSet = new Tracked(result, "ResultSet", callSite());
+                        resultSets.add(resultSet);
+                        return resultSet.proxy(ResultSet.class);
+                    }
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.sustc.service.impl.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Binds the connections of the services to the transaction of the current call.
+ * <p>
+ * The {@link DataSource} autowired into the services is a {@link TransactionAwareDataSourceProxy} over the Hikari pool,
+ * whose connections are measured by a {@link ConnectionMonitor} in between.
+ * Inside a {@code @Transactional} method, every {@link DataSource#getConnection()} on the calling thread returns
+ * the connection of that transaction, and closing it is a no-op until the transaction ends,
+ * so a service call holds exactly one pooled connection however deeply its queries are nested.
+ * Outside a transaction, as in the importers, each call still borrows its own connection from the pool.
+ * <p>
+ * A transaction only takes its connection at its first statement, through a {@link LazyConnectionDataSourceProxy},
+ * so that the {@link ReadWriteRoutingDataSource} below can send the read-only ones to {@code spring.datasource.replica}.
+ * <p>
+ * The pool itself is configured by {@code spring.datasource.*} and {@code spring.datasource.hikari.*} as before.
+ * The driver names a statement on the server from its first run rather than its fifth,
+ * see {@link StatementCatalog}.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource hikariDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        // a default, spring.datasource.hikari.data-source-properties.prepareThreshold still overrides it
+        dataSource.addDataSourceProperty("prepareThreshold", "1");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(HikariDataSource hikariDataSource, ReplicaProperties replica) {
+        HikariDataSource replicaDataSource = null;
+        if (replica.isEnabled()) {
+            replicaDataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            replicaDataSource.setPoolName("replica");
+            replicaDataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            replicaDataSource.setReadOnly(true);
+            replicaDataSource.addDataSourceProperty("prepareThreshold", "1");
+        }
+        return new ReadWriteRoutingDataSource(hikariDataSource, replicaDataSource, replica);
+    }
+
+    @Bean
+    public ConnectionMonitor connectionMonitor(
+            ReadWriteRoutingDataSource readWriteRoutingDataSource,
+            HikariDataSource hikariDataSource,
+            @Value("${sustc.pool.leak-detection:false}") boolean leakDetection
+    ) {
+        return new ConnectionMonitor(readWriteRoutingDataSource, hikariDataSource, leakDetection);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ConnectionMonitor connectionMonitor) {
+        return new TransactionAwareDataSourceProxy(new LazyConnectionDataSourceProxy(connectionMonitor));
+    }
+}
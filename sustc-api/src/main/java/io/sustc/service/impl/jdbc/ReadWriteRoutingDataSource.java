@@ -0,0 +1,123 @@
+package io.sustc.service.impl.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the read-only transactions to a read replica and everything else to the primary.
+ * <p>
+ * The route is chosen when a transaction takes its first connection, so this data source must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which defers that until the first
+ * statement, after the transaction has been marked read-only.
+ * Connections taken outside a transaction, as by the importers, always go to the primary.
+ * <p>
+ * The replica's lag is measured in the background. While it exceeds the configured maximum, or the replica
+ * cannot be reached, reads fall back to the primary. A read may still see data up to that maximum behind the primary.
+ * Without a replica configured, every connection comes from the primary.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final String LAG_SQL = "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END";
+
+    private enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private final HikariDataSource replica;
+
+    private final long maxLagMillis;
+
+    private final ScheduledExecutorService lagChecker;
+
+    private volatile boolean replicaUsable;
+
+    public ReadWriteRoutingDataSource(DataSource primary, HikariDataSource replica, ReplicaProperties properties) {
+        this.replica = replica;
+        this.maxLagMillis = properties.getMaxLag().toMillis();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Route.PRIMARY, primary);
+        if (replica != null) {
+            targets.put(Route.REPLICA, replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        if (replica == null) {
+            lagChecker = null;
+            return;
+        }
+        lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, properties.getLagCheckInterval().toMillis());
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return replicaUsable && TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.REPLICA : Route.PRIMARY;
+    }
+
+    /**
+     * Whether a connection taken now by the current transaction may come from the replica.
+     * This holds for any read-only transaction while a replica is configured, as it may have been routed there
+     * before the replica became unusable.
+     */
+    public boolean mayUseReplica() {
+        return replica != null && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * @return the replica pool, or null if no replica is configured
+     */
+    public HikariDataSource getReplica() {
+        return replica;
+    }
+
+    private void checkLag() {
+        boolean usable;
+        try (Connection conn = replica.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LAG_SQL)) {
+            rs.next();
+            double lagMillis = rs.getDouble(1);
+            usable = lagMillis <= maxLagMillis;
+            if (!usable && replicaUsable) {
+                log.warn("The replica lags {} ms behind, sending reads to the primary", (long) lagMillis);
+            }
+        } catch (SQLException | RuntimeException e) {
+            usable = false;
+            if (replicaUsable) {
+                log.warn("Failed to reach the replica, sending reads to the primary", e);
+            }
+        }
+        if (usable && !replicaUsable) {
+            log.info("Sending reads to the replica");
+        }
+        replicaUsable = usable;
+    }
+
+    @Override
+    public void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+            replica.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.sustc.service.impl.jdbc;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * The read replica the read-only service methods are routed to, see {@link ReadWriteRoutingDataSource}.
+ */
+@Data
+@ConfigurationProperties(prefix = "spring.datasource.replica")
+public class ReplicaProperties {
+
+    /**
+     * JDBC url of the replica. If not specified, every call goes to the primary.
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * Maximum size of the replica's connection pool.
+     */
+    private int maximumPoolSize = 10;
+
+    /**
+     * Reads fall back to the primary while the replica lags behind it by more than this.
+     */
+    private Duration maxLag = Duration.ofSeconds(1);
+
+    /**
+     * How often the replica's lag is measured.
+     */
+    private Duration lagCheckInterval = Duration.ofSeconds(1);
+
+    public boolean isEnabled() {
+        return url != null && !url.isEmpty();
+    }
+}
@@ -0,0 +1,134 @@
+package io.sustc.service.impl.jdbc;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Every statement the services run, declared once.
+ * <p>
+ * The statements are prepared with {@link StatementCatalog#prepare(java.sql.Connection, SqlStatement)},
+ * which counts them and lets the driver reuse the server-side prepared statement of the connection.
+ * The text of a statement must not vary between calls, parameters are always bound with {@code ?}.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum SqlStatement {
+
+    // User_base
+    INSERT_USER("INSERT INTO User_base (Name, Sex, Birthday, Level, Coin, Sign, Identity, Password, QQ, WeChat) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" +
+            "RETURNING UserID"),
+    USER_BY_QQ("SELECT * FROM User_base WHERE QQ = ?"),
+    USER_BY_WECHAT("SELECT * FROM User_base WHERE WeChat = ?"),
+    USER_BY_ID("SELECT * FROM User_base WHERE UserID = ?"),
+    USER_CREDENTIAL("SELECT Password, QQ, WeChat, Identity FROM User_base WHERE UserID = ?"),
+    DELETE_USER("DELETE FROM User_base WHERE UserID = ?"),
+    UPDATE_USER_COIN("UPDATE User_base SET Coin = ? WHERE UserID = ?"),
+
+    // User_follow
+    FOLLOW("SELECT * FROM User_follow WHERE upid = ? AND followerid = ?"),
+    INSERT_FOLLOW("INSERT INTO User_follow (upid, followerid) VALUES (?, ?)"),
+    DELETE_FOLLOW("DELETE FROM User_follow WHERE upid = ? AND followerid = ?"),
+    FOLLOWINGS_OF_USER("SELECT * FROM User_follow WHERE followerid = ?"),
+    FOLLOWERS_OF_USER("SELECT * FROM User_follow WHERE upid = ?"),
+
+    // what a user watched, liked, collected and posted
+    VIEW("SELECT * FROM video_viewer WHERE UserID = ? AND BvID = ?"),
+    VIEWS_OF_USER("SELECT * FROM video_viewer WHERE UserID = ?"),
+    LIKES_OF_USER("SELECT * FROM video_like WHERE UserID = ?"),
+    FAVORITES_OF_USER("SELECT * FROM video_favorite WHERE UserID = ?"),
+    VIDEOS_OF_OWNER("SELECT * FROM video_base WHERE ownerID = ?"),
+    HIDDEN_VIDEO_OF_OWNER("SELECT BvID FROM Video_base WHERE OwnerID = ? " +
+            "AND (ReviewTime IS NULL OR PublicTime IS NULL OR PublicTime > now()) LIMIT 1"),
+
+    // Video_base
+    VIDEO_BY_BV("SELECT * FROM Video_base WHERE BvID = ?"),
+    VIDEO_EXISTS("SELECT BvID FROM Video_base WHERE BvID = ?"),
+    VIDEO_OWNER("SELECT OwnerID FROM Video_base WHERE BvID = ?"),
+    // whether a video is reviewed and its public time has passed, as the search requires of videos the user does not own
+    VIDEO_VISIBILITY("SELECT OwnerID, ReviewTime IS NOT NULL AND PublicTime <= now() AS Published FROM Video_base WHERE BvID = ?"),
+    VIDEO_BY_TITLE_AND_OWNER("SELECT * FROM Video_base WHERE Title = ? AND OwnerID = ?"),
+    UNREVIEWED_VIDEO("SELECT * FROM Video_base WHERE BvID = ? AND Reviewer IS NULL"),
+    INSERT_VIDEO("INSERT INTO Video_base (Title, OwnerID, CommitTime, PublicTime, Duration) VALUES (?, ?, ?, ?, ?) " +
+            "RETURNING BvID"),
+    UPDATE_VIDEO("UPDATE Video_base SET Title = ?, PublicTime = ?, Description = ?, Reviewer = ?, ReviewTime = ? WHERE BvID = ?"),
+    REVIEW_VIDEO("UPDATE Video_base SET Reviewer = ?, ReviewTime = ? WHERE BvID = ?"),
+    DELETE_VIDEO("DELETE FROM Video_base WHERE BvID = ?"),
+    SEARCH_ENTRIES("SELECT v.BvID, v.Title, v.Description, v.OwnerName, v.OwnerID, v.PublicTime, v.ReviewTime, " +
+            "COALESCE(w.Views, 0) FROM Video_base v " +
+            "LEFT JOIN (SELECT BvID, COUNT(*) AS Views FROM Video_viewer GROUP BY BvID) w ON w.BvID = v.BvID"),
+    SEARCH_ENTRY("SELECT v.BvID, v.Title, v.Description, v.OwnerName, v.OwnerID, v.PublicTime, v.ReviewTime, " +
+            "(SELECT COUNT(*) FROM Video_viewer w WHERE w.BvID = v.BvID) FROM Video_base v WHERE v.BvID = ?"),
+    // the keywords, their ILIKE patterns three times, whether the user is a superuser, the user, the page size and offset;
+    // a keyword counts its non-overlapping occurrences, which replace() takes out of the lower-cased fields
+    SEARCH_VIDEOS("SELECT v.BvID FROM Video_base v, " +
+            "LATERAL (SELECT SUM(" +
+            "(length(lower(COALESCE(v.Title, ''))) - length(replace(lower(COALESCE(v.Title, '')), lower(k.w), ''))) / length(lower(k.w)) + " +
+            "(length(lower(COALESCE(v.Description, ''))) - length(replace(lower(COALESCE(v.Description, '')), lower(k.w), ''))) / length(lower(k.w)) + " +
+            "(length(lower(COALESCE(v.OwnerName, ''))) - length(replace(lower(COALESCE(v.OwnerName, '')), lower(k.w), ''))) / length(lower(k.w))" +
+            ") AS Relevance FROM unnest(CAST(? AS text[])) AS k(w)) r " +
+            "WHERE (v.Title ILIKE ANY (CAST(? AS text[])) OR v.Description ILIKE ANY (CAST(? AS text[])) " +
+            "OR v.OwnerName ILIKE ANY (CAST(? AS text[]))) " +
+            "AND (? OR v.OwnerID = ? OR v.ReviewTime IS NOT NULL AND v.PublicTime <= now()) " +
+            "ORDER BY r.Relevance DESC, (SELECT COUNT(*) FROM Video_viewer w WHERE w.BvID = v.BvID) DESC, v.BvID " +
+            "LIMIT ? OFFSET ?"),
+
+    // Video_viewer, Video_coin, Video_like, video_favorite
+    VIEWS_OF_VIDEO("SELECT * FROM Video_viewer WHERE BvID = ?"),
+    AVERAGE_VIEW_TIME("SELECT AVG(Time) FROM Video_viewer WHERE BvID = ?"),
+    VIDEO_COIN("SELECT * FROM Video_coin WHERE UserID = ? AND BvID = ?"),
+    INSERT_VIDEO_COIN("INSERT INTO Video_coin (UserID, BvID) VALUES (?, ?)"),
+    VIDEO_LIKE("SELECT * FROM Video_like WHERE UserID = ? AND BvID = ?"),
+    INSERT_VIDEO_LIKE("INSERT INTO Video_like (UserID, BvID) VALUES (?, ?)"),
+    DELETE_VIDEO_LIKE("DELETE FROM Video_like WHERE UserID = ? AND BvID = ?"),
+    VIDEO_FAVORITE("SELECT * FROM video_favorite WHERE UserID = ? AND BvID = ?"),
+    INSERT_VIDEO_FAVORITE("INSERT INTO video_favorite (UserID, BvID) VALUES (?, ?)"),
+    DELETE_VIDEO_FAVORITE("DELETE FROM video_favorite WHERE UserID = ? AND BvID = ?"),
+
+    // Danmu_base, Danmu_liked
+    DANMUS_IN_RANGE_FILTERED("SELECT * FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? AND DanmuID NOT IN " +
+            "(SELECT danmuid FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ? GROUP BY Content, DanmuID HAVING COUNT(*) > 1)"),
+    DANMUS_IN_RANGE("SELECT * FROM Danmu_base WHERE BvID = ? AND danmu_base.displaytime >= ? AND danmu_base.displaytime <= ?"),
+    DANMUS_OF_VIDEO("SELECT * FROM Danmu_base WHERE BvID = ?"),
+    DANMU_BY_ID("SELECT * FROM Danmu_base WHERE DanmuID = ?"),
+    INSERT_DANMU("INSERT INTO Danmu_base (BvID, UserID, displaytime, Content, PostTime) VALUES (?, ?, ?, ?, ?)" +
+            "RETURNING DanmuID"),
+    DANMU_LIKE("SELECT * FROM Danmu_liked WHERE UserID = ? AND DanmuID = ?"),
+    INSERT_DANMU_LIKE("INSERT INTO danmu_liked (UserID, DanmuID) VALUES (?, ?)"),
+    DELETE_DANMU_LIKE("DELETE FROM danmu_liked WHERE UserID = ? AND DanmuID = ?"),
+
+    // recommendations
+    RECOMMEND_NEXT_VIDEO("SELECT BvID FROM Video_base WHERE BvID IN (SELECT BvID FROM video_viewer " +
+            "WHERE UserID IN (SELECT UserID FROM video_viewer WHERE BvID = ?)) AND BvID != ? " +
+            "ORDER BY (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID AND UserID IN (SELECT UserID FROM video_viewer WHERE BvID = ?)) DESC, BvID LIMIT 5"),
+    GENERAL_RECOMMENDATIONS("SELECT BvID FROM Video_base  " +
+            "ORDER BY (" +
+            "(SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_like WHERE video_base.bvid = video_like.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" +
+            "+ (SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_coin WHERE video_base.bvid = video_coin.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ) )" +
+            "+ (SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID AND userid IN (SELECT userid FROM video_favorite WHERE video_base.bvid = video_favorite.bvid) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" +
+            "+ ((SELECT CAST(COUNT(*) AS DOUBLE PRECISION) AS result FROM danmu_base WHERE BvID = Video_base.BvID) / (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ))" +
+            "+ ((SELECT CAST(SUM(time) AS DOUBLE PRECISION) AS result FROM video_viewer WHERE BvID = Video_base.BvID) / ((SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID ) * video_base.duration))" +
+            "* CASE WHEN (SELECT COUNT(*) FROM video_viewer WHERE BvID = Video_base.BvID) = 0 THEN 0 ELSE 1 END )" +
+            "DESC LIMIT ? OFFSET ?"),
+    VIEWS_OF_FRIENDS("SELECT BvID FROM video_viewer WHERE userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))"),
+    RECOMMEND_VIDEOS_FOR_USER("SELECT BvID FROM video_base WHERE BvID IN " +
+            "(SELECT BvID FROM video_viewer WHERE userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))) " +
+            "AND BvID NOT IN (SELECT BvID FROM video_viewer WHERE userid = ?) " +
+            "ORDER BY (SELECT COUNT(*) FROM video_viewer WHERE BvID = video_base.BvID AND userid IN (SELECT followerid FROM user_follow WHERE upid = ? AND followerid IN (SELECT upid FROM user_follow WHERE followerid = ?))) DESC, " +
+            "(SELECT Level FROM user_base WHERE UserID = video_base.ownerid) DESC, " +
+            "publictime DESC LIMIT ? OFFSET ?"),
+    RECOMMEND_FRIENDS("SELECT UserID FROM User_base WHERE UserID IN (SELECT UserID FROM user_follow " +
+            "WHERE FollowerID IN (SELECT FollowerID FROM user_follow WHERE UserID = ?)) AND UserID NOT IN (SELECT FollowerID FROM user_follow WHERE UserID = ?) " +
+            "ORDER BY (SELECT COUNT(*) FROM user_follow WHERE UserID = User_base.UserID AND FollowerID IN (SELECT FollowerID FROM user_follow WHERE UserID = ?)) DESC, Level DESC LIMIT ? OFFSET ?");
+
+    private final String sql;
+
+    /**
+     * Whether the statement is run by the warm-up, which binds every parameter to {@code NULL}.
+     * Only reads that filter on a parameter qualify, as they then match nothing and finish at once;
+     * writes and the reads without such a filter are left to their first call.
+     */
+    boolean isWarmable() {
+        return sql.startsWith("SELECT") && (sql.contains("= ?") || sql.contains("ILIKE ?"));
+    }
+}
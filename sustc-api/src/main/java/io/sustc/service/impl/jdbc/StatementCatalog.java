@@ -0,0 +1,136 @@
+package io.sustc.service.impl.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.dto.StatementCount;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepares the statements of {@link SqlStatement} and counts how often each one is run.
+ * <p>
+ * The driver keeps the statements prepared on each connection in a per-connection cache keyed by their text,
+ * and with {@code prepareThreshold} set to 1 by {@link DataSourceConfig} it names them on the server from their first run,
+ * so a statement is parsed once per connection and later runs only bind and execute it.
+ * At startup every idle connection of the pool, and of the replica pool if there is one,
+ * runs the {@linkplain SqlStatement#isWarmable() warmable} statements once, so the first calls do not pay for parsing either.
+ * <p>
+ * The counts are taken when a statement is prepared, as the services run every prepared statement once.
+ */
+@Component
+@Slf4j
+public class StatementCatalog {
+
+    @Autowired
+    private HikariDataSource hikariDataSource;
+
+    @Autowired
+    private ReadWriteRoutingDataSource readWriteRoutingDataSource;
+
+    private final Map<SqlStatement, LongAdder> executions = new EnumMap<>(SqlStatement.class);
+
+    public StatementCatalog() {
+        for (SqlStatement statement : SqlStatement.values()) {
+            executions.put(statement, new LongAdder());
+        }
+    }
+
+    public PreparedStatement prepare(Connection conn, SqlStatement statement) throws SQLException {
+        count(statement);
+        return conn.prepareStatement(statement.getSql());
+    }
+
+    /**
+     * Counts a run of a statement that is sent by another client, as by the reactive services.
+     */
+    public void count(SqlStatement statement) {
+        executions.get(statement).increment();
+    }
+
+    /**
+     * @return the statements that have run since startup, most frequent first
+     */
+    public List<StatementCount> getCounts() {
+        List<StatementCount> counts = new ArrayList<>();
+        executions.forEach((statement, count) -> {
+            if (count.sum() > 0) {
+                counts.add(StatementCount.builder()
+                        .name(statement.name())
+                        .sql(statement.getSql())
+                        .executions(count.sum())
+                        .build());
+            }
+        });
+        counts.sort((a, b) -> Long.compare(b.getExecutions(), a.getExecutions()));
+        return counts;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void warmUp() {
+        warmUp(hikariDataSource);
+        if (readWriteRoutingDataSource.getReplica() != null) {
+            // the read-only service methods run there
+            warmUp(readWriteRoutingDataSource.getReplica());
+        }
+    }
+
+    private static void warmUp(HikariDataSource pool) {
+        long startedTime = System.nanoTime();
+        int connections = Math.min(pool.getMinimumIdle(), pool.getMaximumPoolSize());
+        // hold the connections together, so that each one is a different connection of the pool
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(1, connections); i++) {
+                Connection conn = pool.getConnection();
+                held.add(conn);
+                warmUp(conn);
+            }
+            log.info("Warmed up the statements on {} connections of {} in {} ms",
+                    held.size(), pool.getPoolName(), (System.nanoTime() - startedTime) / 1_000_000);
+        } catch (SQLException e) {
+            log.warn("Failed to warm up the statements on {}, they will be prepared on first use", pool.getPoolName(), e);
+        } finally {
+            for (Connection conn : held) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    log.warn("Failed to return a connection after the warm-up", e);
+                }
+            }
+        }
+    }
+
+    private static void warmUp(Connection conn) throws SQLException {
+        for (SqlStatement statement : SqlStatement.values()) {
+            if (!statement.isWarmable()) {
+                continue;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(statement.getSql())) {
+                // bind NULLs of the types inferred by the server, the types the services bind as well,
+                // since the driver prepares a statement again when the parameter types change
+                ParameterMetaData parameters = stmt.getParameterMetaData();
+                for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                    stmt.setNull(i, parameters.getParameterType(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        // nothing is expected to match
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.sustc.service.impl.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Counts the occurrences of all keywords of a search in one pass over a text, with an Aho-Corasick automaton.
+ * <p>
+ * The keywords and texts are lower-cased and walked by code point, so surrogate pairs are never split.
+ * Each keyword counts its non-overlapping occurrences from the left, like repeated {@link String#indexOf(String, int)},
+ * though the occurrences of different keywords may overlap. A keyword given several times counts that many times.
+ * <p>
+ * The transitions of each state are kept as sorted code points with their target states in primitive arrays,
+ * so {@link #countLowerCase(String)} boxes and allocates nothing.
+ * <p>
+ * A matcher is immutable once built and may be shared by concurrent searches.
+ */
+public class KeywordMatcher {
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Where each keyword may count its next occurrence, per thread, reused by the counts.
+     */
+    private static final ThreadLocal<int[]> NEXT_START = ThreadLocal.withInitial(() -> NONE);
+
+    /**
+     * The code points each state has a transition on, in ascending order.
+     */
+    private int[][] codePoints;
+
+    /**
+     * The target state of each transition, in the order of {@link #codePoints}.
+     */
+    private int[][] targets;
+
+    /**
+     * The state of the longest proper suffix of each state that is in the trie.
+     */
+    private int[] failures;
+
+    /**
+     * The keywords ending at each state, including those ending at its failure states.
+     */
+    private int[][] outputs;
+
+    /**
+     * The length of each keyword in code points.
+     */
+    private final int[] lengths;
+
+    /**
+     * How often each keyword was given.
+     */
+    private final int[] weights;
+
+    private KeywordMatcher(Map<String, Integer> keywords) {
+        lengths = new int[keywords.size()];
+        weights = new int[keywords.size()];
+        // the trie is built with boxed transitions, by state in the high and code point in the low 32 bits
+        Map<Long, Integer> transitions = new HashMap<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        ends.add(new ArrayList<>());
+        int keyword = 0;
+        for (Map.Entry<String, Integer> entry : keywords.entrySet()) {
+            String word = entry.getKey();
+            int state = 0;
+            for (int i = 0; i < word.length(); ) {
+                int codePoint = word.codePointAt(i);
+                i += Character.charCount(codePoint);
+                Integer next = transitions.get(key(state, codePoint));
+                if (next == null) {
+                    next = ends.size();
+                    ends.add(new ArrayList<>());
+                    transitions.put(key(state, codePoint), next);
+                }
+                state = next;
+            }
+            ends.get(state).add(keyword);
+            lengths[keyword] = word.codePointCount(0, word.length());
+            weights[keyword] = entry.getValue();
+            keyword++;
+        }
+        freeze(transitions, ends.size());
+        link(ends);
+    }
+
+    /**
+     * Builds the matcher of the keywords of a search.
+     *
+     * @param keywords the keywords split by space, empty ones are skipped
+     */
+    public static KeywordMatcher of(String keywords) {
+        return of(Arrays.asList(keywords.split(" ")));
+    }
+
+    /**
+     * Builds the matcher of the given keywords, empty ones are skipped.
+     */
+    public static KeywordMatcher of(List<String> words) {
+        Map<String, Integer> keywords = new LinkedHashMap<>();
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                keywords.merge(word.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            }
+        }
+        return new KeywordMatcher(keywords);
+    }
+
+    /**
+     * Counts the occurrences of the keywords in {@code text}, which may be null.
+     */
+    public int count(String text) {
+        if (text == null || lengths.length == 0) {
+            return 0;
+        }
+        return countLowerCase(text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Counts the occurrences of the keywords like {@link #count(String)} in a text that is already lower-cased.
+     */
+    public int countLowerCase(String text) {
+        if (lengths.length == 0) {
+            return 0;
+        }
+        // where the next counted occurrence of each keyword may start at the earliest
+        int[] nextStart = NEXT_START.get();
+        if (nextStart.length < lengths.length) {
+            nextStart = new int[lengths.length];
+            NEXT_START.set(nextStart);
+        } else {
+            Arrays.fill(nextStart, 0, lengths.length, 0);
+        }
+        int count = 0;
+        int state = 0;
+        int position = 0;
+        for (int i = 0; i < text.length(); position++) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            state = step(state, codePoint);
+            for (int keyword : outputs[state]) {
+                int start = position - lengths[keyword] + 1;
+                if (start >= nextStart[keyword]) {
+                    nextStart[keyword] = position + 1;
+                    count += weights[keyword];
+                }
+            }
+        }
+        return count;
+    }
+
+    private int step(int state, int codePoint) {
+        while (true) {
+            int transition = Arrays.binarySearch(codePoints[state], codePoint);
+            if (transition >= 0) {
+                return targets[state][transition];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failures[state];
+        }
+    }
+
+    /**
+     * Moves the transitions of the trie into the sorted arrays of each state.
+     */
+    private void freeze(Map<Long, Integer> transitions, int states) {
+        List<List<Long>> edges = new ArrayList<>(states);
+        for (int i = 0; i < states; i++) {
+            edges.add(new ArrayList<>());
+        }
+        for (long edge : transitions.keySet()) {
+            edges.get((int) (edge >>> 32)).add(edge);
+        }
+        codePoints = new int[states][];
+        targets = new int[states][];
+        for (int state = 0; state < states; state++) {
+            List<Long> out = edges.get(state);
+            // the state is the same in all keys, so they sort by code point
+            out.sort(null);
+            codePoints[state] = out.isEmpty() ? NONE : new int[out.size()];
+            targets[state] = out.isEmpty() ? NONE : new int[out.size()];
+            for (int i = 0; i < out.size(); i++) {
+                codePoints[state][i] = (int) (long) out.get(i);
+                targets[state][i] = transitions.get(out.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sets the failure links and merged outputs breadth first, so that every failure state is done before it is used.
+     */
+    private void link(List<List<Integer>> ends) {
+        int states = ends.size();
+        failures = new int[states];
+        outputs = new int[states][];
+        outputs[0] = NONE;
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < codePoints[state].length; i++) {
+                int child = targets[state][i];
+                failures[child] = state == 0 ? 0 : step(failures[state], codePoints[state][i]);
+                int[] inherited = outputs[failures[child]];
+                int[] own = ends.get(child).stream().mapToInt(Integer::intValue).toArray();
+                int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+                outputs[child] = merged;
+                queue.add(child);
+            }
+        }
+    }
+
+    private static long key(int state, int codePoint) {
+        return (long) state << 32 | (codePoint & 0xffffffffL);
+    }
+}
@@ -0,0 +1,307 @@
+package io.sustc.service.impl.search;
+
+import io.sustc.dto.SearchCacheStats;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the pages returned by {@code searchVideo}, in front of whichever {@link VideoSearchEngine} is configured.
+ * <p>
+ * A page is keyed by the sorted lower-cased keywords, as their order does not change the ranking, by the page,
+ * and by what the user may see: superusers see every video, a user owning unreviewed or unpublished videos sees those too,
+ * and every other user sees the public videos only and shares their cached pages.
+ * <p>
+ * Up to {@code sustc.search.cache.max-entries} pages are kept in LRU order, each for at most {@code sustc.search.cache.ttl}.
+ * When the services post, update, review or delete a video they pass it to {@link #invalidate(String)},
+ * which drops the pages having a keyword in its title, description or owner name once the transaction commits.
+ * The TTL bounds what no write reports: videos becoming public at their public time and views removed with deleted users.
+ */
+@Component
+public class SearchResultCache {
+
+    private static final String SUPERUSER = "superuser";
+
+    private static final String PUBLIC = "public";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private StatementCatalog statements;
+
+    private final int maxEntries;
+
+    private final long ttlNanos;
+
+    private final Map<List<Object>, Cached<List<String>>> pages;
+
+    /**
+     * Whether each recently seen user owns videos that others cannot see.
+     */
+    private final Map<Long, Cached<Boolean>> owners;
+
+    /**
+     * Bumped by every invalidation, so a search that raced with one is not cached.
+     */
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    public SearchResultCache(
+            @Value("${sustc.search.cache.max-entries:10000}") int maxEntries,
+            @Value("${sustc.search.cache.ttl:30s}") Duration ttl
+    ) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.pages = new LinkedHashMap<List<Object>, Cached<List<String>>>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Cached<List<String>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.owners = new LinkedHashMap<Long, Cached<Boolean>>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cached<Boolean>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached page of the search, or runs {@code search} and caches its result.
+     *
+     * @return a page the caller may modify
+     */
+    public List<String> get(AuthPrincipal principal, String keywords, int pageSize, int pageNum, Supplier<List<String>> search) {
+        if (maxEntries <= 0) {
+            return search.get();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : keywords.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word.toLowerCase(Locale.ROOT));
+            }
+        }
+        Collections.sort(words);
+        List<Object> key = Arrays.asList(words, visibility(principal), pageSize, pageNum);
+        long now = System.nanoTime();
+        long searchedGeneration;
+        synchronized (this) {
+            Cached<List<String>> cached = pages.get(key);
+            if (cached != null && !cached.isExpired(now)) {
+                hits.increment();
+                return new ArrayList<>(cached.value);
+            }
+            misses.increment();
+            searchedGeneration = generation;
+        }
+        List<String> page = search.get();
+        if (page != null) {
+            synchronized (this) {
+                if (generation == searchedGeneration) {
+                    pages.put(key, new Cached<>(Collections.unmodifiableList(new ArrayList<>(page)), now + ttlNanos));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Drops the pages a posted, updated, reviewed or deleted video may appear in, or have appeared in,
+     * once the current transaction commits.
+     * It reads the video as the transaction sees it, so an update calls it both before and after changing the video,
+     * and a deletion before deleting it.
+     */
+    public void invalidate(String bv) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.SEARCH_ENTRY)) {
+            stmt.setString(1, bv);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    invalidate(rs.getLong(5), rs.getString(2), rs.getString(3), rs.getString(4));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops the pages a video with these fields may appear in, like {@link #invalidate(String)},
+     * for a caller that has already read the video, such as the reactive services before they change or delete it.
+     */
+    public void invalidate(long owner, String title, String description, String ownerName) {
+        String[] fields = {lower(title), lower(description), lower(ownerName)};
+        afterCommit(() -> {
+            owners.remove(owner);
+            Iterator<Map.Entry<List<Object>, Cached<List<String>>>> it = pages.entrySet().iterator();
+            while (it.hasNext()) {
+                @SuppressWarnings("unchecked")
+                List<String> words = (List<String>) it.next().getKey().get(0);
+                if (matchesAny(words, fields)) {
+                    it.remove();
+                    invalidations.increment();
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the pages the videos of a user may appear in, before the user and its videos are deleted.
+     * The fields come with the videos of the owner, so this is one query however many videos there are.
+     */
+    public void invalidateOwner(long mid) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.VIDEOS_OF_OWNER)) {
+            stmt.setLong(1, mid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    invalidate(mid, rs.getString("Title"), rs.getString("Description"), rs.getString("OwnerName"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops every page, e.g. after the tables are truncated or bulk loaded.
+     */
+    public synchronized void clear() {
+        pages.clear();
+        owners.clear();
+        generation++;
+    }
+
+    public SearchCacheStats getStats() {
+        int size;
+        synchronized (this) {
+            size = pages.size();
+        }
+        return SearchCacheStats.builder()
+                .hits(hits.sum())
+                .misses(misses.sum())
+                .invalidations(invalidations.sum())
+                .size(size)
+                .maxSize(maxEntries)
+                .build();
+    }
+
+    /**
+     * Who else sees the same results as {@code principal}.
+     */
+    private Object visibility(AuthPrincipal principal) {
+        if (principal.isSuperuser()) {
+            return SUPERUSER;
+        }
+        return ownsHiddenVideos(principal.getMid()) ? principal.getMid() : PUBLIC;
+    }
+
+    private boolean ownsHiddenVideos(long mid) {
+        long now = System.nanoTime();
+        long checkedGeneration;
+        synchronized (this) {
+            Cached<Boolean> cached = owners.get(mid);
+            if (cached != null && !cached.isExpired(now)) {
+                return cached.value;
+            }
+            checkedGeneration = generation;
+        }
+        boolean hidden;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.HIDDEN_VIDEO_OF_OWNER)) {
+            stmt.setLong(1, mid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                hidden = rs.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            if (generation == checkedGeneration) {
+                owners.put(mid, new Cached<>(hidden, now + ttlNanos));
+            }
+        }
+        return hidden;
+    }
+
+    /**
+     * Runs an invalidation under the lock of the cache once the current transaction commits, or right away outside of one.
+     */
+    private void afterCommit(Runnable invalidation) {
+        Runnable locked = () -> {
+            synchronized (this) {
+                generation++;
+                invalidation.run();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    locked.run();
+                }
+            });
+        } else {
+            locked.run();
+        }
+    }
+
+    private static boolean matchesAny(List<String> words, String[] fields) {
+        for (String word : words) {
+            for (String field : fields) {
+                if (field.contains(word)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String lower(String field) {
+        return field == null ? "" : field.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Cached<T> {
+
+        private final T value;
+
+        private final long expiresAt;
+
+        Cached(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.sustc.service.impl.search;
+
+/**
+ * Keeps the best {@code k} of the offered (score, id) pairs in a bounded min-heap on primitive arrays.
+ * <p>
+ * A higher score is better, and of equal scores the lower id, so the order is total and pages do not overlap.
+ * Offering n pairs costs O(n log k) and no allocation, against O(n log n) and an object per pair for a full sort.
+ */
+class TopKSelector {
+
+    private final long[] scores;
+
+    private final int[] ids;
+
+    private int size;
+
+    TopKSelector(int k) {
+        scores = new long[k];
+        ids = new int[k];
+    }
+
+    /**
+     * Whether (scoreA, idA) ranks before (scoreB, idB).
+     */
+    static boolean isBetter(long scoreA, int idA, long scoreB, int idB) {
+        return scoreA != scoreB ? scoreA > scoreB : idA < idB;
+    }
+
+    void offer(long score, int id) {
+        if (size < scores.length) {
+            scores[size] = score;
+            ids[size] = id;
+            siftUp(size++);
+        } else if (size > 0 && isBetter(score, id, scores[0], ids[0])) {
+            scores[0] = score;
+            ids[0] = id;
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the kept pairs best first, after which {@link #score(int)} and {@link #id(int)} read them by rank.
+     * The selector takes no more offers afterwards.
+     */
+    void sort() {
+        // pop the worst to the end until the heap is empty
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    long score(int rank) {
+        return scores[rank];
+    }
+
+    int id(int rank) {
+        return ids[rank];
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isBetter(scores[parent], ids[parent], scores[i], ids[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        siftDown(i, size);
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && isBetter(scores[worst], ids[worst], scores[left], ids[left])) {
+                worst = left;
+            }
+            if (right < end && isBetter(scores[worst], ids[worst], scores[right], ids[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+    }
+}
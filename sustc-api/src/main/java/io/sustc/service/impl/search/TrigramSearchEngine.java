@@ -0,0 +1,116 @@
+package io.sustc.service.impl.search;
+
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Answers {@code searchVideo} with one statement, {@link SqlStatement#SEARCH_VIDEOS}, that matches, counts, filters,
+ * sorts and pages the videos in Postgres.
+ * <p>
+ * The keywords are matched with {@code ILIKE ANY}, which a bitmap scan of the {@code pg_trgm} GIN indexes
+ * on the title, description and owner name answers without reading the whole table.
+ * The indexes are created at startup and after every bulk load if they are missing;
+ * without the extension the statement still returns the same results from a sequential scan.
+ * The engine reads the committed tables, so the writes of the services need no bookkeeping.
+ */
+@Component
+@ConditionalOnProperty(name = "sustc.search.backend", havingValue = "trigram")
+@Slf4j
+public class TrigramSearchEngine implements VideoSearchEngine {
+
+    private static final String[] INDEXES_SQL = {
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            "CREATE INDEX IF NOT EXISTS video_base_title_trgm ON Video_base USING gin (Title gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS video_base_description_trgm ON Video_base USING gin (Description gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS video_base_owner_name_trgm ON Video_base USING gin (OwnerName gin_trgm_ops)",
+            "ANALYZE Video_base"
+    };
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private StatementCatalog statements;
+
+    @Override
+    public List<String> search(AuthPrincipal principal, String keywords, int pageSize, int pageNum) {
+        List<String> words = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        for (String word : keywords.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+                patterns.add("%" + escape(word) + "%");
+            }
+        }
+        List<String> page = new ArrayList<>();
+        if (words.isEmpty()) {
+            return page;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.SEARCH_VIDEOS)) {
+            Array patternArray = conn.createArrayOf("text", patterns.toArray());
+            stmt.setArray(1, conn.createArrayOf("text", words.toArray()));
+            stmt.setArray(2, patternArray);
+            stmt.setArray(3, patternArray);
+            stmt.setArray(4, patternArray);
+            stmt.setBoolean(5, principal.isSuperuser());
+            stmt.setLong(6, principal.getMid());
+            stmt.setLong(7, pageSize);
+            stmt.setLong(8, (long) (pageNum - 1) * pageSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return page;
+    }
+
+    /**
+     * Creates the trigram indexes if they are missing, e.g. after a bulk load that dropped them.
+     */
+    @Override
+    public void rebuild() {
+        createIndexes();
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void createIndexes() {
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : INDEXES_SQL) {
+                stmt.execute(sql);
+            }
+            log.info("Checked the trigram indexes for search in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            log.warn("Failed to create the trigram indexes, searches will scan the videos", e);
+        }
+    }
+
+    /**
+     * Escapes the wildcards of {@code ILIKE}, so that a keyword only matches itself.
+     */
+    private static String escape(String word) {
+        return word.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
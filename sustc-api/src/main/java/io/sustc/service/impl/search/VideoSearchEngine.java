@@ -0,0 +1,53 @@
+package io.sustc.service.impl.search;
+
+import io.sustc.service.impl.auth.AuthPrincipal;
+
+import java.util.List;
+
+/**
+ * Runs {@link io.sustc.service.VideoService#searchVideo} for the video service, which has already checked its arguments.
+ * <p>
+ * The engine is chosen with {@code sustc.search.backend}: {@code memory} for the {@link VideoSearchIndex} (the default)
+ * or {@code trigram} for the {@link TrigramSearchEngine}.
+ * The services report their writes to the videos through the other methods, an engine that reads the tables directly ignores them.
+ */
+public interface VideoSearchEngine {
+
+    /**
+     * Searches the videos visible to {@code principal}.
+     *
+     * @param keywords the keywords split by space, each counted as often as it is given
+     * @return the {@code bv}s of the requested page
+     */
+    List<String> search(AuthPrincipal principal, String keywords, int pageSize, int pageNum);
+
+    /**
+     * Called after the tables were bulk loaded.
+     */
+    default void rebuild() {
+    }
+
+    /**
+     * Called after the tables were truncated.
+     */
+    default void clear() {
+    }
+
+    /**
+     * Called in the transaction that posted, updated or reviewed a video.
+     */
+    default void refresh(String bv) {
+    }
+
+    /**
+     * Called in the transaction that deleted a video.
+     */
+    default void remove(String bv) {
+    }
+
+    /**
+     * Called in the transaction that deleted a user, with the user's videos.
+     */
+    default void removeOwner(long mid) {
+    }
+}
@@ -0,0 +1,530 @@
+package io.sustc.service.impl.search;
+
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Answers {@code searchVideo} from memory, with an inverted index over the title, description and owner name of every video.
+ * <p>
+ * The fields are lower-cased and each of their 1, 2 and 3 character substrings points to the videos containing it.
+ * A keyword of up to 3 characters is looked up directly, a longer one in the videos containing all of its trigrams,
+ * which are then checked by counting the keyword in the fields. A search thus reads the postings of its keywords
+ * and the videos found, never the whole table.
+ * <p>
+ * The index is built by {@link #rebuild()} after every bulk load, or else on the first search,
+ * and kept up to date by the services with {@link #refresh(String)}, {@link #remove(String)} and {@link #removeOwner(long)}.
+ * Inside a transaction those changes are applied once it commits. The views of a video are counted when its entry is loaded.
+ * <p>
+ * A removed or updated video leaves its id behind in the postings, the index is rebuilt in memory once half of the ids are stale.
+ * <p>
+ * Only the best {@code pageNum * pageSize} hits are kept while ranking, by a {@link TopKSelector}, instead of sorting them all.
+ * The relevance of a candidate is counted by the {@link KeywordMatcher} of the keywords in one pass over each field,
+ * the matchers of recent searches are kept in an LRU map.
+ * The end of each page returned is remembered as a cursor until the index changes or a video the search found
+ * becomes public, so a request for the following page only keeps the best {@code pageSize} hits ranked after it.
+ * The candidates found by several keywords are ranked once, tracked in a bit set of each thread.
+ */
+@Component
+@ConditionalOnProperty(name = "sustc.search.backend", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class VideoSearchIndex implements VideoSearchEngine {
+
+    private static final int MAX_GRAM = 3;
+
+    private static final int MAX_CURSORS = 4096;
+
+    private static final int MAX_MATCHERS = 1024;
+
+    /**
+     * The ids already ranked by the current search of each thread.
+     */
+    private static final ThreadLocal<BitSet> SEEN = ThreadLocal.withInitial(BitSet::new);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private StatementCatalog statements;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The entries by id, null for the ids of removed entries.
+     */
+    private List<Entry> entries = new ArrayList<>();
+
+    private Map<String, Integer> ids = new HashMap<>();
+
+    private Map<String, Postings> postings = new HashMap<>();
+
+    private boolean loaded;
+
+    /**
+     * Bumped by every change, as ids are reused and rankings shift.
+     */
+    private long version;
+
+    /**
+     * Where the recently returned pages ended, by keywords, visibility, page size and page number.
+     */
+    private final Map<List<Object>, Cursor> cursors = new LinkedHashMap<List<Object>, Cursor>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Cursor> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+
+    /**
+     * The matchers of the recent searches, by their sorted keywords.
+     */
+    private final Map<List<String>, KeywordMatcher> matchers = new LinkedHashMap<List<String>, KeywordMatcher>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, KeywordMatcher> eldest) {
+            return size() > MAX_MATCHERS;
+        }
+    };
+
+    @Override
+    public List<String> search(AuthPrincipal principal, String keywords, int pageSize, int pageNum) {
+        List<String> words = new ArrayList<>();
+        for (String word : keywords.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word.toLowerCase(Locale.ROOT));
+            }
+        }
+        ensureLoaded();
+        // the same user may see different videos than others, superusers all see the same
+        Object visibility = principal.isSuperuser() ? "superuser" : principal.getMid();
+        lock.readLock().lock();
+        try {
+            long skipped = (long) (pageNum - 1) * pageSize;
+            if (words.isEmpty() || skipped >= ids.size()) {
+                return new ArrayList<>();
+            }
+            long now = System.currentTimeMillis();
+            Cursor after = cursor(Arrays.asList(words, visibility, pageSize, pageNum - 1), now);
+            if (after != null) {
+                skipped = 0;
+            }
+            // the pages end with the earliest public time of a candidate the user cannot see yet
+            long validUntil = after != null ? after.validUntil : Long.MAX_VALUE;
+            TopKSelector top = new TopKSelector((int) Math.min(skipped + pageSize, ids.size()));
+            KeywordMatcher matcher = matcher(words);
+            BitSet seen = seen(entries.size());
+            for (String word : new LinkedHashSet<>(words)) {
+                for (int id : candidates(word)) {
+                    Entry entry = entries.get(id);
+                    if (entry == null || seen.get(id)) {
+                        continue;
+                    }
+                    seen.set(id);
+                    if (!entry.isVisibleTo(principal, now)) {
+                        if (entry.reviewTime != null && entry.publicTime != null) {
+                            validUntil = Math.min(validUntil, entry.publicTime.getTime());
+                        }
+                        continue;
+                    }
+                    int relevance = entry.relevance(matcher);
+                    if (relevance == 0) {
+                        continue;
+                    }
+                    // relevance first, then views, which stay far below 2^32
+                    long score = (long) relevance << 32 | entry.views;
+                    if (after == null || TopKSelector.isBetter(after.score, after.id, score, id)) {
+                        top.offer(score, id);
+                    }
+                }
+            }
+            top.sort();
+            List<String> page = new ArrayList<>(pageSize);
+            for (int rank = (int) skipped; rank < top.size(); rank++) {
+                page.add(entries.get(top.id(rank)).bv);
+            }
+            if (!page.isEmpty()) {
+                int last = top.size() - 1;
+                remember(Arrays.asList(words, visibility, pageSize, pageNum), new Cursor(top.score(last), top.id(last), version, validUntil));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reloads every video from the database, e.g. after a bulk load.
+     */
+    @Override
+    public void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            reset();
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = statements.prepare(conn, SqlStatement.SEARCH_ENTRIES);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    add(toEntry(rs));
+                }
+            } catch (SQLException e) {
+                reset();
+                throw new RuntimeException(e);
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Indexed {} videos for search in {} ms", ids.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Empties the index, e.g. after the tables are truncated.
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            reset();
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reloads a video that was posted, updated or reviewed, or removes it if it no longer exists.
+     * The video is read in the current transaction and replaced once that commits.
+     */
+    @Override
+    public void refresh(String bv) {
+        Entry entry;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = statements.prepare(conn, SqlStatement.SEARCH_ENTRY)) {
+            stmt.setString(1, bv);
+            try (ResultSet rs = stmt.executeQuery()) {
+                entry = rs.next() ? toEntry(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        afterCommit(() -> {
+            delete(bv);
+            if (entry != null) {
+                add(entry);
+            }
+        });
+    }
+
+    /**
+     * Removes a deleted video once the current transaction commits.
+     */
+    @Override
+    public void remove(String bv) {
+        afterCommit(() -> delete(bv));
+    }
+
+    /**
+     * Removes the videos of a deleted user once the current transaction commits.
+     */
+    @Override
+    public void removeOwner(long mid) {
+        afterCommit(() -> {
+            for (Entry entry : entries) {
+                if (entry != null && entry.ownerMid == mid) {
+                    delete(entry.bv);
+                }
+            }
+        });
+    }
+
+    private KeywordMatcher matcher(List<String> words) {
+        List<String> key = new ArrayList<>(words);
+        Collections.sort(key);
+        synchronized (matchers) {
+            return matchers.computeIfAbsent(key, KeywordMatcher::of);
+        }
+    }
+
+    /**
+     * The end of the page before the requested one, if it was returned since the last change
+     * and none of the videos it skipped as unpublished has become public since.
+     */
+    private Cursor cursor(List<Object> key, long now) {
+        synchronized (cursors) {
+            Cursor cursor = cursors.get(key);
+            return cursor != null && cursor.version == version && now < cursor.validUntil ? cursor : null;
+        }
+    }
+
+    private void remember(List<Object> key, Cursor cursor) {
+        synchronized (cursors) {
+            cursors.put(key, cursor);
+        }
+    }
+
+    private void ensureLoaded() {
+        lock.readLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (this) {
+            if (!loaded) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Runs a change under the write lock once the current transaction commits, or right away outside of one.
+     * Changes made before the index is loaded are dropped, as the load will see them.
+     */
+    private void afterCommit(Runnable change) {
+        Runnable locked = () -> {
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    version++;
+                    change.run();
+                    compactIfStale();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    locked.run();
+                }
+            });
+        } else {
+            locked.run();
+        }
+    }
+
+    /**
+     * The cleared bit set of the current thread, for ids below {@code size}.
+     */
+    private static BitSet seen(int size) {
+        BitSet seen = SEEN.get();
+        if (seen.size() < size) {
+            seen = new BitSet(size);
+            SEEN.set(seen);
+        } else {
+            seen.clear();
+        }
+        return seen;
+    }
+
+    /**
+     * The ids of the videos that may contain {@code word}, in ascending order.
+     */
+    private int[] candidates(String word) {
+        if (word.length() <= MAX_GRAM) {
+            Postings found = postings.get(word);
+            return found == null ? new int[0] : Arrays.copyOf(found.ids, found.size);
+        }
+        // intersect the trigrams of the word, starting with the rarest
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM <= word.length(); i++) {
+            Postings found = postings.get(word.substring(i, i + MAX_GRAM));
+            if (found == null) {
+                return new int[0];
+            }
+            lists.add(found);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int size = result.length;
+        for (int l = 1; l < lists.size() && size > 0; l++) {
+            Postings other = lists.get(l);
+            int kept = 0;
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (result[i] < other.ids[j]) {
+                    i++;
+                } else if (result[i] > other.ids[j]) {
+                    j++;
+                } else {
+                    result[kept++] = result[i];
+                    i++;
+                    j++;
+                }
+            }
+            size = kept;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private void add(Entry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        ids.put(entry.bv, id);
+        Set<String> grams = new HashSet<>();
+        for (String field : entry.fields) {
+            for (int i = 0; i < field.length(); i++) {
+                for (int n = 1; n <= MAX_GRAM && i + n <= field.length(); n++) {
+                    grams.add(field.substring(i, i + n));
+                }
+            }
+        }
+        for (String gram : grams) {
+            postings.computeIfAbsent(gram, g -> new Postings()).add(id);
+        }
+    }
+
+    private void delete(String bv) {
+        Integer id = ids.remove(bv);
+        if (id != null) {
+            entries.set(id, null);
+        }
+    }
+
+    private void compactIfStale() {
+        if (entries.size() < 1024 || ids.size() * 2 > entries.size()) {
+            return;
+        }
+        List<Entry> live = new ArrayList<>(ids.size());
+        for (Entry entry : entries) {
+            if (entry != null) {
+                live.add(entry);
+            }
+        }
+        reset();
+        live.forEach(this::add);
+    }
+
+    private void reset() {
+        version++;
+        entries = new ArrayList<>();
+        ids = new HashMap<>();
+        postings = new HashMap<>();
+    }
+
+    private static Entry toEntry(ResultSet rs) throws SQLException {
+        return new Entry(rs.getString(1), rs.getLong(5), rs.getLong(8), rs.getTimestamp(6), rs.getTimestamp(7),
+                new String[]{lower(rs.getString(2)), lower(rs.getString(3)), lower(rs.getString(4))});
+    }
+
+    private static String lower(String field) {
+        return field == null ? "" : field.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+
+        private final String bv;
+
+        private final long ownerMid;
+
+        private final long views;
+
+        private final Timestamp publicTime;
+
+        private final Timestamp reviewTime;
+
+        /**
+         * The lower-cased title, description and owner name.
+         */
+        private final String[] fields;
+
+        Entry(String bv, long ownerMid, long views, Timestamp publicTime, Timestamp reviewTime, String[] fields) {
+            this.bv = bv;
+            this.ownerMid = ownerMid;
+            this.views = views;
+            this.publicTime = publicTime;
+            this.reviewTime = reviewTime;
+            this.fields = fields;
+        }
+
+        /**
+         * Unreviewed or unpublished videos are only visible to superusers and their owners.
+         */
+        boolean isVisibleTo(AuthPrincipal principal, long now) {
+            return principal.isSuperuser() || ownerMid == principal.getMid()
+                    || reviewTime != null && publicTime != null && publicTime.getTime() <= now;
+        }
+
+        /**
+         * Counts the occurrences of the keywords in the fields, one pass over each.
+         */
+        int relevance(KeywordMatcher matcher) {
+            int relevance = 0;
+            for (String field : fields) {
+                relevance += matcher.countLowerCase(field);
+            }
+            return relevance;
+        }
+    }
+
+    /**
+     * The ids of the videos containing a gram, in ascending order.
+     */
+    private static class Postings {
+
+        private int[] ids = new int[2];
+
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * The score and id of the last video of a page, the next page continues with the videos ranked after it.
+     */
+    private static class Cursor {
+
+        private final long score;
+
+        private final int id;
+
+        private final long version;
+
+        /**
+         * When a video the search skipped becomes public, in epoch milliseconds, and the ranking after this cursor changes.
+         */
+        private final long validUntil;
+
+        Cursor(long score, int id, long version, long validUntil) {
+            this.score = score;
+            this.id = id;
+            this.version = version;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.sustc.service.impl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.UserService;
+import io.sustc.service.VideoService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a service call holds a single pooled connection however deeply its queries are nested,
+ * so that many concurrent callers queue for the pool instead of exhausting it against themselves.
+ * <p>
+ * The calls run through the proxied services against PostgreSQL in a container, with a pool much smaller
+ * than the number of callers. Every borrow from the pool is counted on the borrowing thread by a Hikari metrics tracker.
+ */
+@SpringBootTest(classes = ConnectionPerCallTest.TestApplication.class, properties = {
+        "spring.datasource.hikari.maximum-pool-size=8",
+        "spring.datasource.hikari.connection-timeout=10000",
+})
+@Testcontainers(disabledWithoutDocker = true)
+class ConnectionPerCallTest {
+
+    private static final int THREADS = 32;
+
+    private static final int CALLS_PER_THREAD = 20;
+
+    private static final long OWNER = 1;
+
+    private static final String BV = "BV1xx411c7mD";
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("schema.sql");
+
+    @Autowired
+    private VideoService videoService;
+
+    @Autowired
+    private UserService userService;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    /**
+     * One owner of a public video and a user with coins for each calling thread.
+     */
+    @BeforeAll
+    static void insertData() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO User_base (UserID, Name, Coin, Identity, Password) VALUES (?, ?, ?, 'USER', ?)")) {
+                for (long mid = OWNER; mid <= OWNER + THREADS; mid++) {
+                    stmt.setLong(1, mid);
+                    stmt.setString(2, "user" + mid);
+                    stmt.setInt(3, 100);
+                    stmt.setString(4, password(mid));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO Video_base (BvID, Title, OwnerID, OwnerName, CommitTime, ReviewTime, PublicTime, Duration, Description) " +
+                            "VALUES (?, 'a video', ?, 'user1', now() - interval '2 days', now() - interval '1 day', now() - interval '1 day', 60, 'to coin')")) {
+                stmt.setString(1, BV);
+                stmt.setLong(2, OWNER);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    @BeforeEach
+    void resetCounts() {
+        BorrowCounter.reset();
+    }
+
+    @Test
+    void coinVideoHoldsOneConnectionPerCall() throws Exception {
+        runConcurrently(thread -> videoService.coinVideo(auth(OWNER + 1 + thread), BV));
+
+        assertOneConnectionPerCall();
+    }
+
+    @Test
+    void getUserInfoHoldsOneConnectionPerCall() throws Exception {
+        runConcurrently(thread -> userService.getUserInfo(OWNER + 1 + thread));
+
+        assertOneConnectionPerCall();
+    }
+
+    private static void assertOneConnectionPerCall() {
+        assertEquals(0, BorrowCounter.timeouts.sum(), "calls timed out waiting for the pool");
+        assertEquals(1, BorrowCounter.peakHeld.get(), "a call held several connections at once");
+        assertEquals(THREADS * CALLS_PER_THREAD, BorrowCounter.borrows.sum(), "a call borrowed several connections in turn");
+    }
+
+    /**
+     * Runs {@code call} {@link #CALLS_PER_THREAD} times on each of {@link #THREADS} threads, all started at once.
+     */
+    private static void runConcurrently(IntConsumer call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < CALLS_PER_THREAD; j++) {
+                        call.accept(thread);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                // rethrows what a call threw, such as a timeout of the pool
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static AuthInfo auth(long mid) {
+        return AuthInfo.builder().mid(mid).password(password(mid)).build();
+    }
+
+    private static String password(long mid) {
+        return "password" + mid;
+    }
+
+    /**
+     * Counts the connections each thread holds from the pool. Hikari reports a borrow and a return
+     * on the thread that takes and closes the connection, which for the services is the calling thread.
+     */
+    static class BorrowCounter implements IMetricsTracker {
+
+        private static final ThreadLocal<int[]> held = ThreadLocal.withInitial(() -> new int[1]);
+
+        static final LongAdder borrows = new LongAdder();
+
+        static final LongAdder timeouts = new LongAdder();
+
+        static final LongAccumulator peakHeld = new LongAccumulator(Math::max, 0);
+
+        static void reset() {
+            borrows.reset();
+            timeouts.reset();
+            peakHeld.reset();
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            borrows.increment();
+            peakHeld.accumulate(++held.get()[0]);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            held.get()[0]--;
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "io.sustc")
+    static class TestApplication {
+
+        /**
+         * Installs the {@link BorrowCounter} before the pool starts.
+         */
+        @Bean
+        static BeanPostProcessor borrowCounting() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    if (bean instanceof HikariDataSource) {
+                        ((HikariDataSource) bean).setMetricsTrackerFactory((poolName, poolStats) -> new BorrowCounter());
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
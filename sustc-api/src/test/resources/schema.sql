@@ -0,0 +1,73 @@
+-- the tables the services read and write, enough for the tests to run them against a real PostgreSQL
+CREATE TABLE User_base (
+    UserID   BIGSERIAL PRIMARY KEY,
+    Name     VARCHAR NOT NULL,
+    Sex      VARCHAR,
+    Birthday VARCHAR,
+    Level    SMALLINT NOT NULL DEFAULT 0,
+    Coin     INTEGER NOT NULL DEFAULT 0,
+    Sign     VARCHAR,
+    Identity VARCHAR NOT NULL,
+    Password VARCHAR,
+    QQ       VARCHAR UNIQUE,
+    WeChat   VARCHAR UNIQUE
+);
+
+CREATE TABLE User_follow (
+    upid       BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    followerid BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    PRIMARY KEY (upid, followerid)
+);
+
+CREATE TABLE Video_base (
+    BvID        VARCHAR PRIMARY KEY DEFAULT 'BV' || md5(random()::TEXT),
+    Title       VARCHAR NOT NULL,
+    OwnerID     BIGINT NOT NULL REFERENCES User_base (UserID) ON DELETE CASCADE,
+    OwnerName   VARCHAR,
+    CommitTime  TIMESTAMP,
+    ReviewTime  TIMESTAMP,
+    PublicTime  TIMESTAMP,
+    Duration    REAL,
+    Description VARCHAR,
+    Reviewer    BIGINT REFERENCES User_base (UserID) ON DELETE SET NULL
+);
+
+CREATE TABLE Video_viewer (
+    UserID BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    BvID   VARCHAR REFERENCES Video_base (BvID) ON DELETE CASCADE,
+    Time   REAL,
+    PRIMARY KEY (UserID, BvID)
+);
+
+CREATE TABLE Video_like (
+    UserID BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    BvID   VARCHAR REFERENCES Video_base (BvID) ON DELETE CASCADE,
+    PRIMARY KEY (UserID, BvID)
+);
+
+CREATE TABLE Video_coin (
+    UserID BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    BvID   VARCHAR REFERENCES Video_base (BvID) ON DELETE CASCADE,
+    PRIMARY KEY (UserID, BvID)
+);
+
+CREATE TABLE Video_favorite (
+    UserID BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    BvID   VARCHAR REFERENCES Video_base (BvID) ON DELETE CASCADE,
+    PRIMARY KEY (UserID, BvID)
+);
+
+CREATE TABLE Danmu_base (
+    DanmuID     BIGSERIAL PRIMARY KEY,
+    BvID        VARCHAR REFERENCES Video_base (BvID) ON DELETE CASCADE,
+    UserID      BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    DisplayTime REAL,
+    Content     VARCHAR,
+    PostTime    TIMESTAMP
+);
+
+CREATE TABLE Danmu_liked (
+    UserID  BIGINT REFERENCES User_base (UserID) ON DELETE CASCADE,
+    DanmuID BIGINT REFERENCES Danmu_base (DanmuID) ON DELETE CASCADE,
+    PRIMARY KEY (UserID, DanmuID)
+);
@@ -0,0 +1,29 @@
+import org.springframework.boot.gradle.tasks.bundling.BootJar
+import org.springframework.boot.gradle.tasks.run.BootRun
+
+plugins {
+    java
+    alias(libs.plugins.spring.boot)
+    alias(libs.plugins.spring.dependencyManagement)
+    alias(libs.plugins.lombok)
+}
+
+dependencies {
+    // the services and their jdbc stack come from whichever sustc-api the runner puts on the classpath,
+    // so the submitted jar stays free of the reactive client below
+    compileOnly(project(":sustc-api"))
+    compileOnly("org.springframework.boot:spring-boot-starter-jdbc")
+
+    // the non-blocking client of the `reactive` profile, SCRAM for its password authentication
+    implementation("io.projectreactor:reactor-core")
+    implementation("io.vertx:vertx-pg-client:4.4.6")
+    implementation("com.ongres.scram:client:2.1")
+}
+
+tasks.withType<BootRun> {
+    enabled = false
+}
+
+tasks.withType<BootJar> {
+    enabled = false
+}
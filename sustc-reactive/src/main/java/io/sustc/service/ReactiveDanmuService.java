@@ -0,0 +1,29 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterparts of {@link DanmuService}, on the same schema.
+ * Each method returns at once, the {@link Mono} runs its queries when subscribed and emits the counterpart's result.
+ * Where the counterpart returns {@code null}, the {@link Mono} completes empty.
+ */
+public interface ReactiveDanmuService {
+
+    /**
+     * @see DanmuService#sendDanmu(AuthInfo, String, String, float)
+     */
+    Mono<Long> sendDanmu(AuthInfo auth, String bv, String content, float time);
+
+    /**
+     * @see DanmuService#displayDanmu(String, float, float, boolean)
+     */
+    Mono<List<Long>> displayDanmu(String bv, float timeStart, float timeEnd, boolean filter);
+
+    /**
+     * @see DanmuService#likeDanmu(AuthInfo, long)
+     */
+    Mono<Boolean> likeDanmu(AuthInfo auth, long id);
+}
@@ -0,0 +1,34 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterparts of {@link RecommenderService}, on the same schema.
+ * Each method returns at once, the {@link Mono} runs its queries when subscribed and emits the counterpart's result.
+ * Where the counterpart returns {@code null}, the {@link Mono} completes empty.
+ */
+public interface ReactiveRecommenderService {
+
+    /**
+     * @see RecommenderService#recommendNextVideo(String)
+     */
+    Mono<List<String>> recommendNextVideo(String bv);
+
+    /**
+     * @see RecommenderService#generalRecommendations(int, int)
+     */
+    Mono<List<String>> generalRecommendations(int pageSize, int pageNum);
+
+    /**
+     * @see RecommenderService#recommendVideosForUser(AuthInfo, int, int)
+     */
+    Mono<List<String>> recommendVideosForUser(AuthInfo auth, int pageSize, int pageNum);
+
+    /**
+     * @see RecommenderService#recommendFriends(AuthInfo, int, int)
+     */
+    Mono<List<Long>> recommendFriends(AuthInfo auth, int pageSize, int pageNum);
+}
@@ -0,0 +1,44 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.RegisterUserReq;
+import io.sustc.dto.UserInfoResp;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterparts of {@link UserService}, on the same schema.
+ * Each method returns at once, the {@link Mono} runs its queries when subscribed and emits the counterpart's result.
+ * Where the counterpart returns {@code null}, the {@link Mono} completes empty.
+ */
+public interface ReactiveUserService {
+
+    /**
+     * @see UserService#register(RegisterUserReq)
+     */
+    Mono<Long> register(RegisterUserReq req);
+
+    /**
+     * @see UserService#deleteAccount(AuthInfo, long)
+     */
+    Mono<Boolean> deleteAccount(AuthInfo auth, long mid);
+
+    /**
+     * @see UserService#follow(AuthInfo, long)
+     */
+    Mono<Boolean> follow(AuthInfo auth, long followeeMid);
+
+    /**
+     * @see io.sustc.service.impl.auth.Authenticator#login(AuthInfo)
+     */
+    Mono<String> login(AuthInfo auth);
+
+    /**
+     * @see io.sustc.service.impl.auth.Authenticator#logout(String)
+     */
+    Mono<Boolean> logout(String token);
+
+    /**
+     * @see UserService#getUserInfo(long)
+     */
+    Mono<UserInfoResp> getUserInfo(long mid);
+}
@@ -0,0 +1,66 @@
+package io.sustc.service;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.PostVideoReq;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Non-blocking counterparts of {@link VideoService}, on the same schema.
+ * Each method returns at once, the {@link Mono} runs its queries when subscribed and emits the counterpart's result.
+ * Where the counterpart returns {@code null}, the {@link Mono} completes empty.
+ */
+public interface ReactiveVideoService {
+
+    /**
+     * @see VideoService#postVideo(AuthInfo, PostVideoReq)
+     */
+    Mono<String> postVideo(AuthInfo auth, PostVideoReq req);
+
+    /**
+     * @see VideoService#deleteVideo(AuthInfo, String)
+     */
+    Mono<Boolean> deleteVideo(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#updateVideoInfo(AuthInfo, String, PostVideoReq)
+     */
+    Mono<Boolean> updateVideoInfo(AuthInfo auth, String bv, PostVideoReq req);
+
+    /**
+     * @see VideoService#searchVideo(AuthInfo, String, int, int)
+     */
+    Mono<List<String>> searchVideo(AuthInfo auth, String keywords, int pageSize, int pageNum);
+
+    /**
+     * @see VideoService#getAverageViewRate(String)
+     */
+    Mono<Double> getAverageViewRate(String bv);
+
+    /**
+     * @see VideoService#getHotspot(String)
+     */
+    Mono<Set<Integer>> getHotspot(String bv);
+
+    /**
+     * @see VideoService#reviewVideo(AuthInfo, String)
+     */
+    Mono<Boolean> reviewVideo(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#coinVideo(AuthInfo, String)
+     */
+    Mono<Boolean> coinVideo(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#likeVideo(AuthInfo, String)
+     */
+    Mono<Boolean> likeVideo(AuthInfo auth, String bv);
+
+    /**
+     * @see VideoService#collectVideo(AuthInfo, String)
+     */
+    Mono<Boolean> collectVideo(AuthInfo auth, String bv);
+}
@@ -0,0 +1,114 @@
+package io.sustc.service.impl.reactive;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.ReactiveDanmuService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.vertx.sqlclient.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static io.sustc.service.impl.reactive.ReactivePgClient.all;
+import static io.sustc.service.impl.reactive.ReactivePgClient.first;
+
+@Service
+@Profile("reactive")
+@Slf4j
+public class ReactiveDanmuServiceImpl implements ReactiveDanmuService {
+
+    @Autowired
+    private ReactivePgClient pg;
+
+    @Override
+    public Mono<Long> sendDanmu(AuthInfo auth, String bv, String content, float time) {
+        if (bv == null || bv.isEmpty() || content == null || content.isEmpty() || time < 0) {
+            return Mono.just(-1L);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> Mono.zip(pg.query(SqlStatement.VIDEO_BY_BV, bv), pg.query(SqlStatement.VIEW, principal.getMid(), bv))
+                        .filter(found -> isPublished(first(found.getT1(), row -> row)) && found.getT2().size() > 0)
+                        .flatMap(found -> pg.query(SqlStatement.INSERT_DANMU, bv, principal.getMid(), time, content, LocalDateTime.now())))
+                .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> row.getLong(0))))
+                .defaultIfEmpty(-1L)
+                .onErrorResume(e -> {
+                    log.error("Failed to send danmu to {}", bv, e);
+                    return Mono.just(-1L);
+                });
+    }
+
+    @Override
+    public Mono<List<Long>> displayDanmu(String bv, float timeStart, float timeEnd, boolean filter) {
+        if (bv == null || timeStart < 0 || timeEnd < 0 || timeStart > timeEnd) {
+            return Mono.empty();
+        }
+        return pg.query(SqlStatement.VIDEO_BY_BV, bv)
+                .flatMap(ReactivePgClient::first)
+                .filter(video -> isPublished(video) && timeEnd <= video.getFloat("duration"))
+                .flatMap(video -> pg.query(SqlStatement.DANMUS_IN_RANGE, bv, timeStart, timeEnd))
+                .map(rows -> {
+                    List<Row> danmus = all(rows, row -> row);
+                    if (filter) {
+                        // only the earliest posted danmu of each content
+                        Map<String, Row> earliest = new HashMap<>();
+                        for (Row danmu : danmus) {
+                            earliest.merge(danmu.getString("content"), danmu, (a, b) ->
+                                    b.getLocalDateTime("posttime").isBefore(a.getLocalDateTime("posttime")) ? b : a);
+                        }
+                        danmus = new ArrayList<>(earliest.values());
+                    }
+                    return danmus.stream()
+                            .sorted(Comparator.comparingDouble(danmu -> danmu.getFloat("displaytime")))
+                            .map(danmu -> danmu.getLong("danmuid"))
+                            .collect(Collectors.toList());
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to display danmu of {}", bv, e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<Boolean> likeDanmu(AuthInfo auth, long id) {
+        if (id < 0) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.DANMU_BY_ID, id)
+                        .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> row.getString("bvid"))))
+                        .flatMap(bv -> pg.query(SqlStatement.VIEW, principal.getMid(), bv))
+                        .filter(views -> views.size() > 0)
+                        .flatMap(views -> pg.inTransaction(conn -> pg.query(conn, SqlStatement.DANMU_LIKE, principal.getMid(), id)
+                                .flatMap(likes -> likes.size() > 0
+                                        ? pg.query(conn, SqlStatement.DELETE_DANMU_LIKE, principal.getMid(), id).thenReturn(false)
+                                        : pg.query(conn, SqlStatement.INSERT_DANMU_LIKE, principal.getMid(), id).thenReturn(true)))))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to like danmu {}", id, e);
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * Whether a video exists and its public time has come.
+     */
+    static boolean isPublished(Row video) {
+        if (video == null) {
+            return false;
+        }
+        LocalDateTime publicTime = video.getLocalDateTime("publictime");
+        return publicTime != null && !publicTime.isAfter(LocalDateTime.now());
+    }
+}
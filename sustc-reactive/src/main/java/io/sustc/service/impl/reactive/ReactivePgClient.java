@@ -0,0 +1,190 @@
+package io.sustc.service.impl.reactive;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.SqlClient;
+import io.vertx.sqlclient.Tuple;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The non-blocking PostgreSQL client of the reactive services, on the database of {@code spring.datasource}.
+ * <p>
+ * Queries are sent by the Vert.x event loops, so a call waiting for the database holds neither a thread nor,
+ * outside a transaction, a connection of its own: the single statements are pipelined over a few connections,
+ * up to {@code sustc.reactive.pipelining-limit} in flight on each. Transactions take a connection of a second pool
+ * of the same size for their whole duration.
+ * <p>
+ * The statements are those of {@link SqlStatement}, with their {@code ?} numbered as the server expects,
+ * and are prepared once per connection. Their runs are counted by the {@link StatementCatalog} as well.
+ */
+@Component
+@Profile("reactive")
+@Slf4j
+public class ReactivePgClient implements DisposableBean {
+
+    @Autowired
+    private StatementCatalog statements;
+
+    @Autowired
+    private Authenticator authenticator;
+
+    private final Map<SqlStatement, String> numberedSql = new EnumMap<>(SqlStatement.class);
+
+    private final Vertx vertx;
+
+    private final SqlClient client;
+
+    private final Pool pool;
+
+    @Autowired
+    public ReactivePgClient(
+            DataSourceProperties properties,
+            @Value("${sustc.reactive.pool-size:4}") int poolSize,
+            @Value("${sustc.reactive.pipelining-limit:256}") int pipeliningLimit
+    ) {
+        for (SqlStatement statement : SqlStatement.values()) {
+            numberedSql.put(statement, number(statement.getSql()));
+        }
+        PgConnectOptions connectOptions = PgConnectOptions.fromUri(properties.determineUrl().replaceFirst("^jdbc:", ""));
+        connectOptions.setUser(properties.determineUsername());
+        connectOptions.setPassword(properties.determinePassword());
+        connectOptions.setCachePreparedStatements(true);
+        connectOptions.setPipeliningLimit(pipeliningLimit);
+        PoolOptions poolOptions = new PoolOptions().setMaxSize(poolSize);
+        vertx = Vertx.vertx();
+        client = PgPool.client(vertx, connectOptions, poolOptions);
+        pool = PgPool.pool(vertx, connectOptions, poolOptions);
+        log.info("Reactive services connected to {} with {} connections", properties.determineUrl(), poolSize);
+    }
+
+    /**
+     * Runs a single statement on its own, pipelined with the statements of other calls.
+     */
+    public Mono<RowSet<Row>> query(SqlStatement statement, Object... params) {
+        return query(client, statement, params);
+    }
+
+    /**
+     * Runs a statement on {@code conn}, the connection of a transaction.
+     */
+    public Mono<RowSet<Row>> query(SqlClient conn, SqlStatement statement, Object... params) {
+        return mono(() -> {
+            statements.count(statement);
+            return conn.preparedQuery(numberedSql.get(statement)).execute(Tuple.from(Arrays.asList(params)));
+        });
+    }
+
+    /**
+     * Runs {@code work} in a transaction, which commits when the returned {@link Mono} completes
+     * and rolls back when it fails.
+     */
+    public <T> Mono<T> inTransaction(Function<SqlClient, Mono<T>> work) {
+        return mono(() -> pool.withTransaction(conn -> Future.fromCompletionStage(work.apply(conn).toFuture())));
+    }
+
+    /**
+     * Resolves the user of {@code auth} with {@link Authenticator#resolve(AuthInfo, java.util.function.LongFunction)},
+     * loading it through this client if it is not cached.
+     */
+    public Mono<AuthPrincipal> resolve(AuthInfo auth) {
+        return Mono.fromCompletionStage(() -> authenticator.resolve(auth, this::credential));
+    }
+
+    /**
+     * Loads the credential of a user for the {@link Authenticator}, completing with null if the user does not exist.
+     */
+    public CompletionStage<Authenticator.Credential> credential(long mid) {
+        return query(SqlStatement.USER_CREDENTIAL, mid)
+                .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> Authenticator.Credential.of(
+                        row.getString(0), row.getString(1), row.getString(2), row.getString(3)))))
+                .toFuture();
+    }
+
+    /**
+     * @return the first row, or an empty {@link Mono} if there are no rows
+     */
+    public static Mono<Row> first(RowSet<Row> rows) {
+        return Mono.justOrEmpty(first(rows, row -> row));
+    }
+
+    /**
+     * @return the first row mapped by {@code mapper}, or null if there are no rows
+     */
+    public static <T> T first(RowSet<Row> rows, Function<Row, T> mapper) {
+        RowIterator<Row> iterator = rows.iterator();
+        return iterator.hasNext() ? mapper.apply(iterator.next()) : null;
+    }
+
+    public static <T> List<T> all(RowSet<Row> rows, Function<Row, T> mapper) {
+        List<T> result = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            result.add(mapper.apply(row));
+        }
+        return result;
+    }
+
+    /**
+     * Runs a blocking call, such as one of the JDBC-backed search components, on a worker thread instead of an event loop.
+     */
+    public static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Defers a Vert.x operation until subscription, as a {@link Mono} that completes empty for a null result.
+     */
+    private static <T> Mono<T> mono(Supplier<Future<T>> operation) {
+        return Mono.fromCompletionStage(() -> operation.get().toCompletionStage());
+    }
+
+    private static String number(String sql) {
+        StringBuilder numbered = new StringBuilder(sql.length() + 16);
+        int parameters = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '?') {
+                numbered.append('$').append(++parameters);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    @Override
+    public void destroy() {
+        client.close();
+        pool.close();
+        vertx.close();
+    }
+}
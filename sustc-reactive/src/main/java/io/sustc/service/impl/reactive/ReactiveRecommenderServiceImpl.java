@@ -0,0 +1,89 @@
+package io.sustc.service.impl.reactive;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.ReactiveRecommenderService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static io.sustc.service.impl.reactive.ReactivePgClient.all;
+
+@Service
+@Profile("reactive")
+@Slf4j
+public class ReactiveRecommenderServiceImpl implements ReactiveRecommenderService {
+
+    @Autowired
+    private ReactivePgClient pg;
+
+    @Override
+    public Mono<List<String>> recommendNextVideo(String bv) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.empty();
+        }
+        return pg.query(SqlStatement.VIDEO_EXISTS, bv)
+                .filter(video -> video.size() > 0)
+                .flatMap(video -> pg.query(SqlStatement.RECOMMEND_NEXT_VIDEO, bv, bv, bv))
+                .map(rows -> all(rows, row -> row.getString(0)))
+                .onErrorResume(e -> {
+                    log.error("Failed to recommend next video for {}", bv, e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<List<String>> generalRecommendations(int pageSize, int pageNum) {
+        if (pageSize <= 0 || pageNum <= 0) {
+            return Mono.empty();
+        }
+        return pg.query(SqlStatement.GENERAL_RECOMMENDATIONS, pageSize, (pageNum - 1) * pageSize)
+                .map(rows -> all(rows, row -> row.getString(0)))
+                .onErrorResume(e -> {
+                    log.error("Failed to recommend general videos", e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<List<String>> recommendVideosForUser(AuthInfo auth, int pageSize, int pageNum) {
+        if (pageSize <= 0 || pageNum <= 0) {
+            return Mono.empty();
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> {
+                    long mid = principal.getMid();
+                    return pg.query(SqlStatement.VIEWS_OF_FRIENDS, mid, mid)
+                            .flatMap(interests -> interests.size() == 0
+                                    ? generalRecommendations(pageSize, pageNum)
+                                    : pg.query(SqlStatement.RECOMMEND_VIDEOS_FOR_USER, mid, mid, mid, mid, mid, pageSize, (pageNum - 1) * pageSize)
+                                    .map(rows -> all(rows, row -> row.getString(0))));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to recommend videos for a user", e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<List<Long>> recommendFriends(AuthInfo auth, int pageSize, int pageNum) {
+        if (pageSize <= 0 || pageNum <= 0) {
+            return Mono.empty();
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.RECOMMEND_FRIENDS, principal.getMid(), principal.getMid(), principal.getMid(),
+                        pageSize, (pageNum - 1) * pageSize))
+                .map(rows -> all(rows, row -> row.getLong(0)))
+                .onErrorResume(e -> {
+                    log.error("Failed to recommend friends for a user", e);
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,201 @@
+package io.sustc.service.impl.reactive;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.RegisterUserReq;
+import io.sustc.dto.UserInfoResp;
+import io.sustc.service.ReactiveUserService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.auth.Authenticator;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.search.SearchResultCache;
+import io.sustc.service.impl.search.VideoSearchEngine;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import static io.sustc.service.impl.reactive.ReactivePgClient.all;
+import static io.sustc.service.impl.reactive.ReactivePgClient.blocking;
+import static io.sustc.service.impl.reactive.ReactivePgClient.first;
+
+@Service
+@Profile("reactive")
+@Slf4j
+public class ReactiveUserServiceImpl implements ReactiveUserService {
+
+    @Autowired
+    private ReactivePgClient pg;
+
+    @Autowired
+    private Authenticator authenticator;
+
+    @Autowired
+    private VideoSearchEngine videoSearchEngine;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Override
+    public Mono<Long> register(RegisterUserReq req) {
+        if (req.getPassword() == null || req.getPassword().isEmpty() || req.getName() == null || req.getName().isEmpty()
+                || req.getSex() == null || !isValidBirthday(req.getBirthday())) {
+            return Mono.just(-1L);
+        }
+        String qq = req.getQq() == null || req.getQq().isEmpty() ? null : req.getQq();
+        String wechat = req.getWechat() == null || req.getWechat().isEmpty() ? null : req.getWechat();
+        Mono<Boolean> qqTaken = qq == null ? Mono.just(false) : pg.query(SqlStatement.USER_BY_QQ, qq).map(rows -> rows.size() > 0);
+        Mono<Boolean> wechatTaken = wechat == null ? Mono.just(false) : pg.query(SqlStatement.USER_BY_WECHAT, wechat).map(rows -> rows.size() > 0);
+        return Mono.zip(qqTaken, wechatTaken)
+                .filter(taken -> !taken.getT1() && !taken.getT2())
+                .flatMap(taken -> pg.query(SqlStatement.INSERT_USER, req.getName(), req.getSex().toString(), req.getBirthday(),
+                        (short) 0, 0, req.getSign(), "USER", req.getPassword(), qq, wechat))
+                .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> row.getLong(0))))
+                .doOnNext(authenticator::invalidate)
+                .defaultIfEmpty(-1L)
+                .onErrorResume(e -> {
+                    log.error("Failed to register user", e);
+                    return Mono.just(-1L);
+                });
+    }
+
+    @Override
+    public Mono<Boolean> deleteAccount(AuthInfo auth, long mid) {
+        if (mid < 0) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .filterWhen(principal -> {
+                    if (principal.getMid() == mid) {
+                        return Mono.just(true);
+                    }
+                    if (!principal.isSuperuser()) {
+                        return Mono.just(false);
+                    }
+                    // a superuser may only delete regular users besides itself
+                    return Mono.fromCompletionStage(() -> authenticator.identity(mid, pg::credential))
+                            .map(identity -> !identity.equals("SUPERUSER"))
+                            .defaultIfEmpty(false);
+                })
+                // the videos of the user are deleted with it, and their cached result pages are found by their fields
+                .flatMap(principal -> pg.query(SqlStatement.VIDEOS_OF_OWNER, mid))
+                .flatMap(videos -> pg.query(SqlStatement.DELETE_USER, mid)
+                        .flatMap(rows -> {
+                            authenticator.invalidate(mid);
+                            authenticator.revokeSessions(mid);
+                            if (rows.rowCount() == 0) {
+                                return Mono.just(false);
+                            }
+                            return blocking(() -> {
+                                for (Row video : videos) {
+                                    searchResultCache.invalidate(mid, video.getString("title"),
+                                            video.getString("description"), video.getString("ownername"));
+                                }
+                                videoSearchEngine.removeOwner(mid);
+                                return true;
+                            });
+                        }))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to delete user {}", mid, e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public Mono<Boolean> follow(AuthInfo auth, long followeeMid) {
+        if (followeeMid < 0) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(principal -> principal.isValid() && principal.getMid() != followeeMid)
+                .flatMap(principal -> pg.query(SqlStatement.USER_BY_ID, followeeMid)
+                        .filter(followee -> followee.size() > 0)
+                        .flatMap(followee -> pg.inTransaction(conn -> pg.query(conn, SqlStatement.FOLLOW, followeeMid, principal.getMid())
+                                .flatMap(follows -> follows.size() > 0
+                                        ? pg.query(conn, SqlStatement.DELETE_FOLLOW, followeeMid, principal.getMid()).thenReturn(false)
+                                        : pg.query(conn, SqlStatement.INSERT_FOLLOW, followeeMid, principal.getMid()).thenReturn(true)))))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to follow user {}", followeeMid, e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public Mono<String> login(AuthInfo auth) {
+        return Mono.fromCompletionStage(() -> authenticator.login(auth, pg::credential));
+    }
+
+    @Override
+    public Mono<Boolean> logout(String token) {
+        return Mono.fromSupplier(() -> authenticator.logout(token));
+    }
+
+    @Override
+    public Mono<UserInfoResp> getUserInfo(long mid) {
+        if (mid < 0) {
+            return Mono.empty();
+        }
+        return pg.query(SqlStatement.USER_BY_ID, mid)
+                .flatMap(ReactivePgClient::first)
+                .flatMap(user -> Mono.zip(
+                        pg.query(SqlStatement.FOLLOWINGS_OF_USER, mid),
+                        pg.query(SqlStatement.FOLLOWERS_OF_USER, mid),
+                        pg.query(SqlStatement.VIEWS_OF_USER, mid),
+                        pg.query(SqlStatement.LIKES_OF_USER, mid),
+                        pg.query(SqlStatement.FAVORITES_OF_USER, mid),
+                        pg.query(SqlStatement.VIDEOS_OF_OWNER, mid)
+                ).map(found -> UserInfoResp.builder()
+                        .mid(mid)
+                        .coin(user.getInteger("coin"))
+                        .following(longs(found.getT1(), "upid"))
+                        .follower(longs(found.getT2(), "followerid"))
+                        .watched(strings(found.getT3(), "bvid"))
+                        .liked(strings(found.getT4(), "bvid"))
+                        .collected(strings(found.getT5(), "bvid"))
+                        .posted(strings(found.getT6(), "bvid"))
+                        .build()))
+                .onErrorResume(e -> {
+                    log.error("Failed to get user info of {}", mid, e);
+                    return Mono.empty();
+                });
+    }
+
+    private static long[] longs(RowSet<Row> rows, String column) {
+        return all(rows, row -> row.getLong(column)).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static String[] strings(RowSet<Row> rows, String column) {
+        return all(rows, row -> row.getString(column)).toArray(new String[0]);
+    }
+
+    /**
+     * Whether {@code birthday} is absent or a day of the year as {@code X月X日}, February counting 29 days.
+     */
+    private static boolean isValidBirthday(String birthday) {
+        if (birthday == null || birthday.isEmpty()) {
+            return true;
+        }
+        String[] monthAndDay = birthday.split("月");
+        if (monthAndDay.length != 2 || !monthAndDay[1].endsWith("日")) {
+            return false;
+        }
+        int month;
+        int day;
+        try {
+            month = Integer.parseInt(monthAndDay[0]);
+            day = Integer.parseInt(monthAndDay[1].substring(0, monthAndDay[1].length() - 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (month < 1 || month > 12) {
+            return false;
+        }
+        int days = month == 2 ? 29 : month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        return day >= 1 && day <= days;
+    }
+}
@@ -0,0 +1,290 @@
+package io.sustc.service.impl.reactive;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.PostVideoReq;
+import io.sustc.service.ReactiveVideoService;
+import io.sustc.service.impl.auth.AuthPrincipal;
+import io.sustc.service.impl.jdbc.SqlStatement;
+import io.sustc.service.impl.search.SearchResultCache;
+import io.sustc.service.impl.search.VideoSearchEngine;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static io.sustc.service.impl.reactive.ReactiveDanmuServiceImpl.isPublished;
+import static io.sustc.service.impl.reactive.ReactivePgClient.blocking;
+import static io.sustc.service.impl.reactive.ReactivePgClient.first;
+
+@Service
+@Profile("reactive")
+@Slf4j
+public class ReactiveVideoServiceImpl implements ReactiveVideoService {
+
+    @Autowired
+    private ReactivePgClient pg;
+
+    @Autowired
+    private VideoSearchEngine videoSearchEngine;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Override
+    public Mono<String> postVideo(AuthInfo auth, PostVideoReq req) {
+        if (!isValid(req)) {
+            return Mono.empty();
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.VIDEO_BY_TITLE_AND_OWNER, req.getTitle(), principal.getMid())
+                        .filter(sameTitle -> sameTitle.size() == 0)
+                        .flatMap(sameTitle -> pg.query(SqlStatement.INSERT_VIDEO, req.getTitle(), principal.getMid(), LocalDateTime.now(),
+                                req.getPublicTime().toLocalDateTime(), req.getDuration())))
+                .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> row.getString(0))))
+                .flatMap(bv -> refreshSearch(bv).thenReturn(bv))
+                .onErrorResume(e -> {
+                    log.error("Failed to post video {}", req.getTitle(), e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<Boolean> deleteVideo(AuthInfo auth, String bv) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.VIDEO_BY_BV, bv)
+                        .flatMap(ReactivePgClient::first)
+                        .filter(video -> video.getLong("ownerid") == principal.getMid() || principal.isSuperuser()))
+                .flatMap(video -> pg.query(SqlStatement.DELETE_VIDEO, bv)
+                        .filter(rows -> rows.rowCount() > 0)
+                        .flatMap(rows -> blocking(() -> {
+                            invalidateSearch(video);
+                            videoSearchEngine.remove(bv);
+                            return true;
+                        })))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to delete video {}", bv, e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public Mono<Boolean> updateVideoInfo(AuthInfo auth, String bv, PostVideoReq req) {
+        if (bv == null || bv.isEmpty() || !isValid(req)) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.VIDEO_BY_BV, bv)
+                        .flatMap(ReactivePgClient::first)
+                        .filter(video -> video.getLong("ownerid") == principal.getMid()
+                                && video.getFloat("duration") == req.getDuration()
+                                && !isUnchanged(video, req)))
+                .flatMap(video -> pg.query(SqlStatement.UPDATE_VIDEO, req.getTitle(), req.getPublicTime().toLocalDateTime(),
+                                req.getDescription(), null, null, bv)
+                        // the pages of the old title and description go as well
+                        .then(Mono.fromRunnable(() -> invalidateSearch(video)))
+                        .then(refreshSearch(bv))
+                        // the update withdraws an earlier review
+                        .thenReturn(video.getLocalDateTime("reviewtime") != null))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to update video {}", bv, e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public Mono<List<String>> searchVideo(AuthInfo auth, String keywords, int pageSize, int pageNum) {
+        if (keywords == null || keywords.isEmpty() || pageSize <= 0 || pageNum <= 0) {
+            return Mono.empty();
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                // the engine of sustc.search.backend reads over JDBC
+                .flatMap(principal -> blocking(() -> searchResultCache.get(principal, keywords, pageSize, pageNum,
+                        () -> videoSearchEngine.search(principal, keywords, pageSize, pageNum))))
+                .onErrorResume(e -> {
+                    log.error("Failed to search videos by {}", keywords, e);
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public Mono<Double> getAverageViewRate(String bv) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.just(-1.0);
+        }
+        return Mono.zip(pg.query(SqlStatement.VIDEO_BY_BV, bv), pg.query(SqlStatement.AVERAGE_VIEW_TIME, bv))
+                .flatMap(found -> {
+                    Float duration = first(found.getT1(), row -> row.getFloat("duration"));
+                    Double averageTime = first(found.getT2(), row -> row.getDouble(0));
+                    // the average is null when no one has watched the video
+                    return duration == null || averageTime == null ? Mono.<Double>empty() : Mono.just(averageTime / duration);
+                })
+                .defaultIfEmpty(-1.0)
+                .onErrorResume(e -> {
+                    log.error("Failed to get average view rate of {}", bv, e);
+                    return Mono.just(-1.0);
+                });
+    }
+
+    @Override
+    public Mono<Set<Integer>> getHotspot(String bv) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.just(Collections.emptySet());
+        }
+        return pg.query(SqlStatement.DANMUS_OF_VIDEO, bv)
+                .map(danmus -> {
+                    Map<Integer, Integer> counts = new HashMap<>();
+                    for (Row danmu : danmus) {
+                        counts.merge((int) (danmu.getFloat("displaytime") / 10), 1, Integer::sum);
+                    }
+                    int max = counts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+                    Set<Integer> hotspots = new HashSet<>();
+                    counts.forEach((chunk, count) -> {
+                        if (count == max) {
+                            hotspots.add(chunk);
+                        }
+                    });
+                    return hotspots;
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to get hotspot of {}", bv, e);
+                    return Mono.just(Collections.emptySet());
+                });
+    }
+
+    @Override
+    public Mono<Boolean> reviewVideo(AuthInfo auth, String bv) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isSuperuser)
+                .flatMap(principal -> pg.query(SqlStatement.VIDEO_BY_BV, bv)
+                        .flatMap(ReactivePgClient::first)
+                        .filter(video -> video.getLong("ownerid") != principal.getMid() && video.getLocalDateTime("reviewtime") == null)
+                        .flatMap(video -> pg.query(SqlStatement.REVIEW_VIDEO, principal.getMid(), LocalDateTime.now(), bv)))
+                .filter(rows -> rows.rowCount() > 0)
+                .flatMap(rows -> refreshSearch(bv).thenReturn(true))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to review video {}", bv, e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public Mono<Boolean> coinVideo(AuthInfo auth, String bv) {
+        return interact(auth, bv, "coin", (principal, conn) -> pg.query(conn, SqlStatement.VIDEO_COIN, principal.getMid(), bv)
+                .filter(coins -> coins.size() == 0)
+                .flatMap(coins -> pg.query(conn, SqlStatement.USER_BY_ID, principal.getMid()))
+                .flatMap(rows -> Mono.justOrEmpty(first(rows, row -> row.getInteger("coin"))))
+                .filter(coin -> coin > 0)
+                .flatMap(coin -> pg.query(conn, SqlStatement.INSERT_VIDEO_COIN, principal.getMid(), bv)
+                        .then(pg.query(conn, SqlStatement.UPDATE_USER_COIN, coin - 1, principal.getMid()))
+                        .thenReturn(true)));
+    }
+
+    @Override
+    public Mono<Boolean> likeVideo(AuthInfo auth, String bv) {
+        return interact(auth, bv, "like", (principal, conn) -> pg.query(conn, SqlStatement.VIDEO_LIKE, principal.getMid(), bv)
+                .flatMap(likes -> likes.size() > 0
+                        ? pg.query(conn, SqlStatement.DELETE_VIDEO_LIKE, principal.getMid(), bv).thenReturn(false)
+                        : pg.query(conn, SqlStatement.INSERT_VIDEO_LIKE, principal.getMid(), bv).thenReturn(true)));
+    }
+
+    @Override
+    public Mono<Boolean> collectVideo(AuthInfo auth, String bv) {
+        return interact(auth, bv, "collect", (principal, conn) -> pg.query(conn, SqlStatement.VIDEO_FAVORITE, principal.getMid(), bv)
+                .flatMap(favorites -> favorites.size() > 0
+                        ? pg.query(conn, SqlStatement.DELETE_VIDEO_FAVORITE, principal.getMid(), bv).thenReturn(false)
+                        : pg.query(conn, SqlStatement.INSERT_VIDEO_FAVORITE, principal.getMid(), bv).thenReturn(true)));
+    }
+
+    /**
+     * Runs {@code action} in a transaction if the user of {@code auth} can search the video and does not own it.
+     *
+     * @return what {@code action} emits, or {@code false} if it completes empty or the user may not act on the video
+     */
+    private Mono<Boolean> interact(AuthInfo auth, String bv, String actionName,
+                                   BiFunction<AuthPrincipal, SqlClient, Mono<Boolean>> action) {
+        if (bv == null || bv.isEmpty()) {
+            return Mono.just(false);
+        }
+        return pg.resolve(auth)
+                .filter(AuthPrincipal::isValid)
+                .flatMap(principal -> pg.query(SqlStatement.VIDEO_BY_BV, bv)
+                        .flatMap(ReactivePgClient::first)
+                        .filter(video -> video.getLong("ownerid") != principal.getMid() && isVisible(video, principal))
+                        .flatMap(video -> pg.inTransaction(conn -> action.apply(principal, conn))))
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("Failed to {} video {}", actionName, bv, e);
+                    return Mono.just(false);
+                });
+    }
+
+    private static boolean isValid(PostVideoReq req) {
+        return req != null && req.getTitle() != null && !req.getTitle().isEmpty() && req.getDuration() >= 10
+                && req.getPublicTime() != null && !req.getPublicTime().toLocalDateTime().isBefore(LocalDateTime.now());
+    }
+
+    private static boolean isUnchanged(Row video, PostVideoReq req) {
+        return Objects.equals(video.getString("title"), req.getTitle())
+                && Objects.equals(video.getLocalDateTime("publictime"), req.getPublicTime().toLocalDateTime())
+                && Objects.equals(video.getString("description"), req.getDescription());
+    }
+
+    /**
+     * Unreviewed or unpublished videos are only visible to superusers and their owners.
+     */
+    private static boolean isVisible(Row video, AuthPrincipal principal) {
+        return principal.isSuperuser() || video.getLong("ownerid") == principal.getMid()
+                || video.getLocalDateTime("reviewtime") != null && isPublished(video);
+    }
+
+    /**
+     * Drops the cached result pages a video read before its change or deletion appeared in.
+     */
+    private void invalidateSearch(Row video) {
+        searchResultCache.invalidate(video.getLong("ownerid"), video.getString("title"),
+                video.getString("description"), video.getString("ownername"));
+    }
+
+    /**
+     * Brings the search engine and the cached result pages up to date with a video the reactive client has already committed.
+     * A failure is only logged, as the write itself succeeded.
+     */
+    private Mono<Void> refreshSearch(String bv) {
+        return blocking(() -> {
+            videoSearchEngine.refresh(bv);
+            searchResultCache.invalidate(bv);
+            return bv;
+        })
+                .onErrorResume(e -> {
+                    log.error("Failed to refresh video {} for search", bv, e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -13,6 +13,7 @@ dependencies {
         fileTree("$rootDir/submit").matching { include("*.jar") }
             .takeIf { !it.isEmpty } ?: project(":sustc-api")
     )
+    implementation(project(":sustc-reactive"))
     runtimeOnly("org.postgresql:postgresql")
     implementation("com.opencsv:opencsv:5.8")
     implementation("commons-io:commons-io:2.15.0")
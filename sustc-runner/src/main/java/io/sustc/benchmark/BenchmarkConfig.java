@@ -1,5 +1,6 @@
 package io.sustc.benchmark;
 
+import io.sustc.dto.ImportOptions;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -27,4 +28,36 @@ public class BenchmarkConfig {
      * e.g., truncate tables.
      */
     private Boolean studentMode = false;
+
+    /**
+     * How the import step writes records: {@code copy} (default), {@code binary-copy},
+     * {@code staging} through unlogged tables, or the row-by-row {@code row} fallback.
+     */
+    private ImportOptions.Mode importMode = ImportOptions.Mode.COPY;
+
+    /**
+     * Number of connections loading import chunks at the same time.
+     */
+    private Integer importParallelism = 4;
+
+    /**
+     * Number of records per import chunk.
+     */
+    private Integer importChunkSize = 50_000;
+
+    /**
+     * Indicator for dropping indexes and constraints during import and rebuilding them afterwards.
+     */
+    private Boolean importDeferIndexes = false;
+
+    /**
+     * Indicator for decoding the import files while importing them, instead of decoding them all first.
+     */
+    private Boolean importStreaming = false;
+
+    /**
+     * Whether the import step records its committed chunks, so that {@code db import --resume} can continue it.
+     * Not used when streaming.
+     */
+    private Boolean importCheckpoint = false;
 }
@@ -5,17 +5,24 @@ import io.fury.ThreadSafeFury;
 import io.fury.config.CompatibleMode;
 import io.fury.config.Language;
 import io.sustc.dto.DanmuRecord;
+import io.sustc.dto.ImportFormatTiming;
+import io.sustc.dto.ImportOptions;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.VideoRecord;
-import io.sustc.service.DatabaseService;
+import io.sustc.service.impl.DatabaseServiceImpl;
+import io.sustc.service.impl.importer.ImportFormatBenchmark;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -26,43 +33,130 @@ public class BenchmarkService {
     private BenchmarkConfig benchmarkConfig;
 
     @Autowired
-    private DatabaseService databaseService;
+    private DatabaseServiceImpl databaseService;
+
+    @Autowired
+    private ImportFormatBenchmark importFormatBenchmark;
 
     @BenchmarkStep(order = 1, timeout = 10, description = "Import data")
-    @SneakyThrows
     public BenchmarkResult importData() {
+        return importData(false);
+    }
+
+    /**
+     * Imports the data as the benchmark step does.
+     *
+     * @param resume whether to continue from the checkpoints of a previous import instead of starting over
+     */
+    @SneakyThrows
+    public BenchmarkResult importData(boolean resume) {
         val dataDir = Paths.get(benchmarkConfig.getDataPath(), BenchmarkConstants.IMPORT_DATA_PATH);
 
-        ThreadSafeFury fury = Fury.builder()
+        val fury = importFury();
+        val options = ImportOptions.builder()
+                .mode(benchmarkConfig.getImportMode())
+                .parallelism(benchmarkConfig.getImportParallelism())
+                .chunkSize(benchmarkConfig.getImportChunkSize())
+                .deferIndexes(Boolean.TRUE.equals(benchmarkConfig.getImportDeferIndexes()))
+                .checkpoint(resume || Boolean.TRUE.equals(benchmarkConfig.getImportCheckpoint()))
+                .resume(resume)
+                .build();
+
+        if (Boolean.TRUE.equals(benchmarkConfig.getImportStreaming()) && !options.isCheckpoint()) {
+            return importStream(fury, dataDir, options);
+        }
+
+        List<DanmuRecord> danmuRecords = MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.DANMU_FILENAME));
+        List<UserRecord> userRecords = MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.USER_FILENAME));
+        List<VideoRecord> videoRecords = MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.VIDEO_FILENAME));
+
+        val startedTime = System.nanoTime();
+        try {
+            databaseService.importData(danmuRecords, userRecords, videoRecords, options);
+        } catch (Exception e) {
+            log.error("Exception encountered during importing data, you may early stop this run", e);
+        }
+        val finishedTime = System.nanoTime();
+
+        return BenchmarkResult.builder()
+                .elapsedTime(finishedTime - startedTime)
+                .build();
+    }
+
+    /**
+     * Merges the import files found in {@code dataDir} into the database without truncating it.
+     * A missing file counts as no records of that kind.
+     */
+    @SneakyThrows
+    public BenchmarkResult mergeData(Path dataDir) {
+        val fury = importFury();
+
+        List<DanmuRecord> danmuRecords = readIfExists(fury, dataDir.resolve(BenchmarkConstants.DANMU_FILENAME));
+        List<UserRecord> userRecords = readIfExists(fury, dataDir.resolve(BenchmarkConstants.USER_FILENAME));
+        List<VideoRecord> videoRecords = readIfExists(fury, dataDir.resolve(BenchmarkConstants.VIDEO_FILENAME));
+
+        val startedTime = System.nanoTime();
+        databaseService.mergeData(danmuRecords, userRecords, videoRecords);
+        val finishedTime = System.nanoTime();
+
+        return BenchmarkResult.builder()
+                .elapsedTime(finishedTime - startedTime)
+                .build();
+    }
+
+    private static <T> List<T> readIfExists(ThreadSafeFury fury, Path file) throws IOException {
+        return Files.exists(file) ? MappedRecordReader.readAll(fury, file) : Collections.emptyList();
+    }
+
+    /**
+     * Times the write formats of the import on the first {@code rows} records of each import file.
+     * This is a development aid, not a benchmark step.
+     */
+    @SneakyThrows
+    public List<ImportFormatTiming> compareImportFormats(int rows, int iterations) {
+        val dataDir = Paths.get(benchmarkConfig.getDataPath(), BenchmarkConstants.IMPORT_DATA_PATH);
+        val fury = importFury();
+
+        List<DanmuRecord> danmuRecords = sample(MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.DANMU_FILENAME)), rows);
+        List<UserRecord> userRecords = sample(MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.USER_FILENAME)), rows);
+        List<VideoRecord> videoRecords = sample(MappedRecordReader.readAll(fury, dataDir.resolve(BenchmarkConstants.VIDEO_FILENAME)), rows);
+
+        return importFormatBenchmark.run(danmuRecords, userRecords, videoRecords, iterations);
+    }
+
+    private static <T> List<T> sample(List<T> records, int rows) {
+        return new ArrayList<>(records.subList(0, Math.min(rows, records.size())));
+    }
+
+    private static ThreadSafeFury importFury() {
+        return Fury.builder()
                 .requireClassRegistration(false)
                 .withLanguage(Language.JAVA)
                 .withRefTracking(true)
                 .withCompatibleMode(CompatibleMode.COMPATIBLE)
                 .withAsyncCompilation(true)
                 .buildThreadSafeFury();
+    }
 
-        FileInputStream danmuStream = new FileInputStream(
-                dataDir.resolve(BenchmarkConstants.DANMU_FILENAME).toString());
-        byte[] danmuBytes = danmuStream.readAllBytes();
-        danmuStream.close();
-        List<DanmuRecord> danmuRecords = (List<DanmuRecord>) fury.deserialize(danmuBytes);
-
-        FileInputStream userSteram = new FileInputStream(dataDir.resolve(BenchmarkConstants.USER_FILENAME).toString());
-        byte[] userBytes = userSteram.readAllBytes();
-        userSteram.close();
-        List<UserRecord> userRecords = (List<UserRecord>) fury.deserialize(userBytes);
-
-        FileInputStream videoStream = new FileInputStream(
-                dataDir.resolve(BenchmarkConstants.VIDEO_FILENAME).toString());
-        byte[] videoBytes = videoStream.readAllBytes();
-        videoStream.close();
-        List<VideoRecord> videoRecords = (List<VideoRecord>) fury.deserialize(videoBytes);
+    /**
+     * Decodes the import files concurrently with importing them, so the elapsed time includes decoding.
+     */
+    private BenchmarkResult importStream(ThreadSafeFury fury, Path dataDir, ImportOptions options) {
+        val capacity = options.getChunkSize() * 2;
 
         val startedTime = System.nanoTime();
+        RecordStream<UserRecord> userRecords = RecordStream.decode(fury, dataDir.resolve(BenchmarkConstants.USER_FILENAME), capacity);
+        RecordStream<VideoRecord> videoRecords = RecordStream.decode(fury, dataDir.resolve(BenchmarkConstants.VIDEO_FILENAME), capacity);
+        RecordStream<DanmuRecord> danmuRecords = RecordStream.decode(fury, dataDir.resolve(BenchmarkConstants.DANMU_FILENAME), capacity);
         try {
-            databaseService.importData(danmuRecords, userRecords, videoRecords);
+            databaseService.importStream(danmuRecords, userRecords, videoRecords, options);
         } catch (Exception e) {
             log.error("Exception encountered during importing data, you may early stop this run", e);
+        } finally {
+            // a failed import leaves the decoders blocked on their full queues
+            userRecords.close();
+            videoRecords.close();
+            danmuRecords.close();
         }
         val finishedTime = System.nanoTime();
 
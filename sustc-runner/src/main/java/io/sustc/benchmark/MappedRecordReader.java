@@ -0,0 +1,112 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads an import file through a memory mapping instead of copying it into a heap {@code byte[]},
+ * and hands the decoded records out in batches.
+ * <p>
+ * A file holds one serialized {@link List}, which Fury can only decode as a whole,
+ * so all records of a file are on the heap at once after {@link #open}; the mapping only saves the copy
+ * of the raw bytes, and the region is unmapped as soon as decoding finishes rather than when the GC gets to it.
+ * This does not bound the memory of an import by the batch size: files that do not fit the heap
+ * once decoded cannot be imported this way either.
+ * <p>
+ * Each record is released from the decoded list once its batch has been handed out,
+ * so consumed records can be collected while the rest of the file is still being imported.
+ */
+@Slf4j
+public class MappedRecordReader<T> implements Iterator<List<T>> {
+
+    private final List<T> records;
+
+    private final boolean releasable;
+
+    private final int batchSize;
+
+    private int position;
+
+    private MappedRecordReader(List<T> records, int batchSize) {
+        this.records = records;
+        this.releasable = records instanceof ArrayList;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Maps and decodes {@code file}, whose records are then handed out in batches.
+     *
+     * @param batchSize the maximum number of records per batch
+     */
+    public static <T> MappedRecordReader<T> open(ThreadSafeFury fury, Path file, int batchSize) throws IOException {
+        return new MappedRecordReader<>(readAll(fury, file), batchSize);
+    }
+
+    /**
+     * Maps and decodes {@code file} as a whole.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> readAll(ThreadSafeFury fury, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than a single mapped region (2 GiB)");
+            }
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                return (List<T>) fury.deserialize(region);
+            } finally {
+                unmap(region);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < records.size();
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int end = (int) Math.min(records.size(), (long) position + batchSize);
+        List<T> batch = new ArrayList<>(end - position);
+        for (; position < end; position++) {
+            batch.add(records.get(position));
+            if (releasable) {
+                records.set(position, null);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Releases the mapping right away, falling back to the GC when the JDK does not allow it.
+     */
+    private static void unmap(ByteBuffer region) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), region);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Cannot unmap the import file, leaving it to the GC", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decodes an import file on a background thread and hands the records over through a bounded queue.
+ * <p>
+ * The files hold one serialized {@link List}, so a file is decoded as a whole;
+ * the pipeline gain comes from decoding the later files while the earlier ones are being written.
+ * The file is read through {@link MappedRecordReader}, whose batches are put into the queue record by record;
+ * the queue bounds how far decoding runs ahead of the import, not the memory of the decoded file.
+ */
+@Slf4j
+public class RecordStream<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    private Thread decoder;
+
+    private volatile boolean closed;
+
+    private volatile Throwable failure;
+
+    private Object next;
+
+    private RecordStream(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public static <T> RecordStream<T> decode(ThreadSafeFury fury, Path file, int capacity) {
+        RecordStream<T> stream = new RecordStream<>(capacity);
+        stream.decoder = new Thread(() -> stream.produce(fury, file), "decode-" + file.getFileName());
+        stream.decoder.setDaemon(true);
+        stream.decoder.start();
+        return stream;
+    }
+
+    private void produce(ThreadSafeFury fury, Path file) {
+        try {
+            MappedRecordReader<T> reader = MappedRecordReader.open(fury, file, queue.remainingCapacity());
+            while (reader.hasNext()) {
+                for (T record : reader.next()) {
+                    queue.put(record);
+                }
+            }
+        } catch (Throwable e) {
+            if (closed) {
+                // interrupted by close, nobody takes the rest
+                return;
+            }
+            log.error("Failed to decode {}", file, e);
+            failure = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops decoding, e.g. when the import fails before consuming the stream,
+     * so the decoder does not stay blocked on the full queue. The remaining records are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        decoder.interrupt();
+        queue.clear();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        if (next == END) {
+            if (failure != null) {
+                throw new IllegalStateException("Failed to decode records", failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = (T) next;
+        next = null;
+        return record;
+    }
+}
@@ -54,6 +54,7 @@ public class DanmuCommand {
             @ShellOption(defaultValue = ShellOption.NULL) String pwd,
             @ShellOption(defaultValue = ShellOption.NULL) String qq,
             @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = ShellOption.NULL) String token,
             Long id
     ) {
         val auth = AuthInfo.builder()
@@ -61,6 +62,7 @@ public class DanmuCommand {
                 .password(pwd)
                 .qq(qq)
                 .wechat(wechat)
+                .token(token)
                 .build();
 
         return danmuService.likeDanmu(auth, id);
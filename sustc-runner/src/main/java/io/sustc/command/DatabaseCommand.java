@@ -1,13 +1,25 @@
 package io.sustc.command;
 
+import io.sustc.benchmark.BenchmarkConfig;
+import io.sustc.benchmark.BenchmarkConstants;
 import io.sustc.benchmark.BenchmarkService;
 import io.sustc.service.DatabaseService;
+import io.sustc.service.impl.coalesce.RequestCoalescer;
+import io.sustc.service.impl.jdbc.ConnectionMonitor;
+import io.sustc.service.impl.jdbc.StatementCatalog;
+import io.sustc.service.impl.search.SearchResultCache;
+import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @ShellComponent
 @ConditionalOnBean(DatabaseService.class)
@@ -19,15 +31,96 @@ public class DatabaseCommand {
     @Autowired
     private BenchmarkService benchmarkService;
 
+    @Autowired
+    private BenchmarkConfig benchmarkConfig;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private StatementCatalog statementCatalog;
+
+    @Autowired
+    private ConnectionMonitor connectionMonitor;
+
     @ShellMethod(key = "db groupmember", value = "List group members")
     public List<Integer> listGroupMembers() {
         return databaseService.getGroupMembers();
     }
 
-    @ShellMethod(key = "db import", value = "Import data from csv")
-    public void importData() {
-        databaseService.truncate();
-        benchmarkService.importData();
+    @ShellMethod(key = "db import", value = "Import data from csv, or continue a checkpointed import with --resume")
+    public void importData(@ShellOption(defaultValue = "false") boolean resume) {
+        if (!resume) {
+            databaseService.truncate();
+        }
+        benchmarkService.importData(resume);
+    }
+
+    @ShellMethod(key = "db merge", value = "Merge the import files of a directory into the database without truncating it")
+    public long mergeData(@ShellOption(defaultValue = ShellOption.NULL) String path) {
+        val dataDir = path != null
+                ? Paths.get(path)
+                : Paths.get(benchmarkConfig.getDataPath(), BenchmarkConstants.IMPORT_DATA_PATH);
+        return TimeUnit.NANOSECONDS.toMillis(benchmarkService.mergeData(dataDir).getElapsedTime());
+    }
+
+    @ShellMethod(key = "db copybench", value = "Compare PreparedStatement, text COPY and binary COPY on a sample of the import data")
+    public List<String> compareImportFormats(
+            @ShellOption(defaultValue = "20000") int rows,
+            @ShellOption(defaultValue = "3") int iterations
+    ) {
+        return benchmarkService.compareImportFormats(rows, iterations).stream()
+                .map(timing -> String.format("%-12s %-18s %8d rows %8d ms %10d rows/s",
+                        timing.getTable(), timing.getFormat(), timing.getRows(),
+                        TimeUnit.NANOSECONDS.toMillis(timing.getElapsedTime()), timing.getRowsPerSecond()))
+                .collect(Collectors.toList());
+    }
+
+    @ShellMethod(key = "db statements", value = "List how often each statement of the services has run")
+    public List<String> listStatementCounts() {
+        return statementCatalog.getCounts().stream()
+                .map(count -> String.format("%-28s %10d", count.getName(), count.getExecutions()))
+                .collect(Collectors.toList());
+    }
+
+    @ShellMethod(key = "db pool", value = "Show the connection pool usage, acquire latency and hold time per service method")
+    public List<String> showPoolStats() {
+        val stats = connectionMonitor.getStats();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("active %d, idle %d, pending %d, maximum %d",
+                stats.getActiveConnections(), stats.getIdleConnections(), stats.getPendingThreads(), stats.getMaximumPoolSize()));
+        lines.add(String.format("acquired %d connections, %.3f ms on average",
+                stats.getAcquisitions(), stats.getMeanAcquireTime() / 1e6));
+        stats.getAcquireHistogram().forEach((bucket, count) -> lines.add(String.format("  %-12s %10d", bucket, count)));
+        if (stats.getLongestHeldBy() != null) {
+            lines.add(String.format("longest held %d ms by %s",
+                    TimeUnit.NANOSECONDS.toMillis(stats.getLongestHeldTime()), stats.getLongestHeldBy()));
+        }
+        lines.add("hold time per method:");
+        stats.getHoldTimes().forEach(hold -> lines.add(String.format("  %-40s %10d conns %10.3f ms avg %10.3f ms max",
+                hold.getMethod(), hold.getConnections(), hold.getMeanTime() / 1e6, hold.getMaxTime() / 1e6)));
+        stats.getSuspectedLeaks().forEach(leak -> lines.add("suspected leak: " + leak));
+        stats.getLeftOpen().forEach((site, count) -> lines.add(String.format("left open %d times: %s", count, site)));
+        return lines;
+    }
+
+    @ShellMethod(key = "db coalescing", value = "Show how many calls of each read method shared an identical call's query")
+    public List<String> listCoalescingStats() {
+        return requestCoalescer.getStats().stream()
+                .map(stats -> String.format("%-48s %10d calls %10d coalesced %6.1f%%",
+                        stats.getMethod(), stats.getCalls(), stats.getCoalesced(), stats.getCoalescingRatio() * 100))
+                .collect(Collectors.toList());
+    }
+
+    @ShellMethod(key = "db search-cache", value = "Show the hit rate of the cache of search results")
+    public String showSearchCacheStats() {
+        val stats = searchResultCache.getStats();
+        return String.format("%d hits, %d misses, %.1f%% hit rate, %d invalidated, %d of %d entries",
+                stats.getHits(), stats.getMisses(), stats.getHitRatio() * 100, stats.getInvalidations(),
+                stats.getSize(), stats.getMaxSize());
     }
 
     @ShellMethod(key = "db truncate", value = "Truncate tables")
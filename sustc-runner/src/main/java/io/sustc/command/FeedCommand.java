@@ -0,0 +1,54 @@
+package io.sustc.command;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.service.AsyncRecommenderService;
+import io.sustc.service.AsyncUserService;
+import lombok.val;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@ShellComponent
+@ConditionalOnBean({AsyncUserService.class, AsyncRecommenderService.class})
+public class FeedCommand {
+
+    @Autowired
+    private AsyncUserService asyncUserService;
+
+    @Autowired
+    private AsyncRecommenderService asyncRecommenderService;
+
+    @ShellMethod("user feed")
+    public Map<String, Object> feed(
+            @ShellOption(defaultValue = ShellOption.NULL) Long mid,
+            @ShellOption(defaultValue = ShellOption.NULL) String pwd,
+            @ShellOption(defaultValue = ShellOption.NULL) String qq,
+            @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = "10") Integer pageSize
+    ) {
+        val auth = AuthInfo.builder()
+                .mid(mid)
+                .password(pwd)
+                .qq(qq)
+                .wechat(wechat)
+                .build();
+
+        val info = asyncUserService.getUserInfoAsync(mid == null ? 0 : mid);
+        val recommended = asyncRecommenderService.recommendVideosForUserAsync(auth, pageSize, 1);
+        val trending = asyncRecommenderService.generalRecommendationsAsync(pageSize, 1);
+        CompletableFuture.allOf(info, recommended, trending).join();
+
+        val feed = new LinkedHashMap<String, Object>();
+        feed.put("info", info.join());
+        feed.put("recommended", recommended.join());
+        feed.put("trending", trending.join());
+        return feed;
+    }
+}
@@ -4,6 +4,7 @@ import io.sustc.dto.AuthInfo;
 import io.sustc.dto.RegisterUserReq;
 import io.sustc.dto.UserInfoResp;
 import io.sustc.service.UserService;
+import io.sustc.service.impl.auth.Authenticator;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
@@ -18,6 +19,9 @@ public class UserCommand {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private Authenticator authenticator;
+
     @ShellMethod("user register")
     public long register(
             String password,
@@ -65,6 +69,7 @@ public class UserCommand {
             @ShellOption(defaultValue = ShellOption.NULL) String pwd,
             @ShellOption(defaultValue = ShellOption.NULL) String qq,
             @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = ShellOption.NULL) String token,
             Long followeeMid
     ) {
         val auth = AuthInfo.builder()
@@ -72,11 +77,34 @@ public class UserCommand {
                 .password(pwd)
                 .qq(qq)
                 .wechat(wechat)
+                .token(token)
                 .build();
 
         return userService.follow(auth, followeeMid);
     }
 
+    @ShellMethod("user login")
+    public String login(
+            @ShellOption(defaultValue = ShellOption.NULL) Long mid,
+            @ShellOption(defaultValue = ShellOption.NULL) String pwd,
+            @ShellOption(defaultValue = ShellOption.NULL) String qq,
+            @ShellOption(defaultValue = ShellOption.NULL) String wechat
+    ) {
+        val auth = AuthInfo.builder()
+                .mid(mid)
+                .password(pwd)
+                .qq(qq)
+                .wechat(wechat)
+                .build();
+
+        return authenticator.login(auth);
+    }
+
+    @ShellMethod("user logout")
+    public boolean logout(String token) {
+        return authenticator.logout(token);
+    }
+
     @ShellMethod("user info")
     public UserInfoResp getUserInfo(Long mid) {
         return userService.getUserInfo(mid);
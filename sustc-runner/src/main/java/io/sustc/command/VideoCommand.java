@@ -148,6 +148,7 @@ public class VideoCommand {
             @ShellOption(defaultValue = ShellOption.NULL) String pwd,
             @ShellOption(defaultValue = ShellOption.NULL) String qq,
             @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = ShellOption.NULL) String token,
             String bv
     ) {
         val auth = AuthInfo.builder()
@@ -155,6 +156,7 @@ public class VideoCommand {
                 .password(pwd)
                 .qq(qq)
                 .wechat(wechat)
+                .token(token)
                 .build();
 
         return videoService.coinVideo(auth, bv);
@@ -166,6 +168,7 @@ public class VideoCommand {
             @ShellOption(defaultValue = ShellOption.NULL) String pwd,
             @ShellOption(defaultValue = ShellOption.NULL) String qq,
             @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = ShellOption.NULL) String token,
             String bv
     ) {
         val auth = AuthInfo.builder()
@@ -173,6 +176,7 @@ public class VideoCommand {
                 .password(pwd)
                 .qq(qq)
                 .wechat(wechat)
+                .token(token)
                 .build();
 
         return videoService.likeVideo(auth, bv);
@@ -184,6 +188,7 @@ public class VideoCommand {
             @ShellOption(defaultValue = ShellOption.NULL) String pwd,
             @ShellOption(defaultValue = ShellOption.NULL) String qq,
             @ShellOption(defaultValue = ShellOption.NULL) String wechat,
+            @ShellOption(defaultValue = ShellOption.NULL) String token,
             String bv
     ) {
         val auth = AuthInfo.builder()
@@ -191,6 +196,7 @@ public class VideoCommand {
                 .password(pwd)
                 .qq(qq)
                 .wechat(wechat)
+                .token(token)
                 .build();
 
         return videoService.collectVideo(auth, bv);